@@ -0,0 +1,140 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the hot paths of the plus star system, run against generated systems of increasing size.
+ * Every planet gets between 0 and 2 * satellitesPerPlanet satellites, laid out in rings. The arguments are drawn in the
+ * setup and the benchmarks cycle through them, so no random number is generated in the measured code.
+ * @see StarSystemGenerator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StarSystemBenchmark {
+  private static final long SEED = 42;
+  // a power of 2, so the cycling index wraps with a mask
+  private static final int SAMPLES = 1024;
+
+  @Param({ "10", "100", "1000", "10000", "26000" })
+  private int planets;
+
+  @Param({ "4" })
+  private int satellitesPerPlanet;
+
+  private Star star;
+  private Planet planet;
+  private String[] searchQueries;
+  private CelestialBody[] routeStarts;
+  private CelestialBody[] routeEnds;
+  private Position[] positions;
+  private int sample;
+  private OrbitalSimulation simulation;
+  private OrbitalSimulation barnesHutSimulation;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(SEED);
+    star = new StarSystemGenerator(SEED)
+        .setPlanets(planets)
+        .setSatellitesPerPlanet(0, 2 * satellitesPerPlanet)
+        .generate("Sun", 1000);
+
+    ArrayList<CelestialBody> celestialBodies = new ArrayList<>();
+    for (Planet planet : star.getPlanets()) {
+      celestialBodies.add(planet);
+      celestialBodies.addAll(planet.getSatellites());
+    }
+    planet = star.getPlanets().get(0);
+    simulation = new OrbitalSimulation(star, 1, 0.01);
+    barnesHutSimulation = new OrbitalSimulation(star, 1, 0.01, new BarnesHutGravity(1));
+
+    searchQueries = new String[SAMPLES];
+    routeStarts = new CelestialBody[SAMPLES];
+    routeEnds = new CelestialBody[SAMPLES];
+    positions = new Position[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      CelestialBody celestialBody = celestialBodies.get(random.nextInt(celestialBodies.size()));
+      searchQueries[i] = random.nextBoolean() ? celestialBody.getID() : celestialBody.getName();
+      routeStarts[i] = celestialBody;
+      routeEnds[i] = celestialBodies.get(random.nextInt(celestialBodies.size()));
+      positions[i] = random.nextBoolean() ? celestialBody.getPosition()
+          : new Position(random.nextDouble() * 10 * planets, random.nextDouble() * 10 * planets);
+    }
+  }
+
+  /**
+   * @return the index of the next sample, cycling through all of them
+   */
+  private int nextSample() {
+    return sample = (sample + 1) & (SAMPLES - 1);
+  }
+
+  @Benchmark
+  public CelestialBody searchCelestialBody() {
+    return star.searchCelestialBody(searchQueries[nextSample()]);
+  }
+
+  @Benchmark
+  public Position centerOfMass() {
+    return star.centerOfMass();
+  }
+
+  @Benchmark
+  public ArrayList<Collision> detectCollisions() {
+    return star.detectCollisions();
+  }
+
+  @Benchmark
+  public LinkedList<CelestialBody> calculateRoute() {
+    int i = nextSample();
+    return star.calculateRoute(routeStarts[i], routeEnds[i]);
+  }
+
+  @Benchmark
+  public double calculateRouteLength() {
+    int i = nextSample();
+    return star.calculateRouteLength(routeStarts[i], routeEnds[i]);
+  }
+
+  @Benchmark
+  public boolean isPositionFree() {
+    return star.isPositionFree(positions[nextSample()]);
+  }
+
+  @Benchmark
+  public Satellite satelliteConstructor() {
+    return new Satellite("Moon", 1, positions[nextSample()], true, planet);
+  }
+
+  @Benchmark
+  public OrbitalSimulation orbitalStep() {
+    simulation.step(1);
+    return simulation;
+  }
+
+  @Benchmark
+  public OrbitalSimulation barnesHutStep() {
+    barnesHutSimulation.step(1);
+    return barnesHutSimulation;
+  }
+}
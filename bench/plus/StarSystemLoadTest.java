@@ -0,0 +1,106 @@
+package plus;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test of the StarSystemServer: concurrent clients send GET requests in a closed loop and the latency of every
+ * request is recorded, reporting throughput and the p50 and p99 latencies at the end.
+ * Without a server URL a generated star system is served in process.
+ * Usage: StarSystemLoadTest [clients] [requests per client] [server URL]
+ * @see StarSystemServer
+ */
+public class StarSystemLoadTest {
+  private static final long SEED = 42;
+  private static final int WARMUP_REQUESTS = 200;
+
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    int requestsPerClient = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+    // same as App --serve, the latencies of the in process server are measured with TCP_NODELAY
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    StarSystemServer server = null;
+    String baseURL;
+    String[] paths;
+    if (args.length > 2) {
+      baseURL = args[2];
+      paths = new String[] { "/center-of-mass", "/collisions" };
+    } else {
+      Star star = new StarSystemGenerator(SEED).setPlanets(1000).setSatellitesPerPlanet(0, 8).generate("Sole", 1e6);
+      ArrayList<Planet> planets = star.getPlanets();
+      server = new StarSystemServer(star, 0, Runtime.getRuntime().availableProcessors() * 2);
+      baseURL = "http://localhost:" + server.getPort();
+      paths = new String[] { "/search?query=" + planets.get(0).getID(),
+          "/route?start=" + planets.get(1).getID() + "&finish=" + planets.get(planets.size() - 1).getID(),
+          "/center-of-mass", "/collisions" };
+    }
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    try {
+      run(executor, client, baseURL, paths, clients, WARMUP_REQUESTS);
+
+      long start = System.nanoTime();
+      long[] latencies = run(executor, client, baseURL, paths, clients, requestsPerClient);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      Arrays.sort(latencies);
+      System.out.printf("%d requests from %d clients in %.2f s, %.0f requests/s%n", latencies.length, clients, seconds,
+          latencies.length / seconds);
+      System.out.printf("p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", percentile(latencies, 0.50) / 1e6,
+          percentile(latencies, 0.99) / 1e6, latencies[latencies.length - 1] / 1e6);
+    } finally {
+      executor.shutdown();
+      if (server != null)
+        server.close();
+    }
+  }
+
+  /**
+   * @return the latencies, in nanoseconds, of all the requests of all the clients
+   */
+  private static long[] run(ExecutorService executor, HttpClient client, String baseURL, String[] paths,
+      int clients, int requestsPerClient) throws Exception {
+    ArrayList<Future<long[]>> results = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      int firstPath = c;
+      results.add(executor.submit(() -> {
+        long[] latencies = new long[requestsPerClient];
+
+        for (int i = 0; i < requestsPerClient; i++) {
+          HttpRequest request = HttpRequest.newBuilder(URI.create(baseURL + paths[(firstPath + i) % paths.length]))
+              .GET().build();
+          long start = System.nanoTime();
+          HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+          latencies[i] = System.nanoTime() - start;
+
+          if (response.statusCode() != 200)
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode());
+        }
+
+        return latencies;
+      }));
+    }
+
+    long[] latencies = new long[clients * requestsPerClient];
+    for (int c = 0; c < clients; c++)
+      System.arraycopy(results.get(c).get(), 0, latencies, c * requestsPerClient, requestsPerClient);
+
+    return latencies;
+  }
+
+  private static long percentile(long[] sortedLatencies, double percentile) {
+    int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+
+    return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+  }
+}
@@ -1,9 +1,34 @@
 package plus;
 
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.file.Path;
+
 import it.kibo.fp.lib.InputData;
 
 public class App {
   public static void main(String[] args) throws Exception {
+    // headless mode: App --batch [commands file], reading from stdin without a file
+    if (args.length > 0 && args[0].equals("--batch")) {
+      try (Reader commands = args.length > 1 ? new FileReader(args[1]) : new InputStreamReader(System.in)) {
+        new BatchCommandRunner().run(commands, new OutputStreamWriter(System.out));
+      }
+      return;
+    }
+
+    // query server: App --serve FILE [port], the star system is loaded from a file saved with StarSystemFile
+    if (args.length > 1 && args[0].equals("--serve")) {
+      // must be set before the JDK server classes are loaded, the -D flag on the command line wins
+      if (System.getProperty("sun.net.httpserver.nodelay") == null)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+      StarSystemServer server = new StarSystemServer(StarSystemFile.load(Path.of(args[1])),
+          args.length > 2 ? Integer.parseInt(args[2]) : 8080, Runtime.getRuntime().availableProcessors() * 2);
+      System.out.println("Listening on http://localhost:" + server.getPort());
+      return;
+    }
+
     StarSystemController.clearConsole();
     System.out.println("Welcome to the OIFCS (Official Intergalactic Federation Control System)");
     StarSystemController.wait(2000);
@@ -0,0 +1,280 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import it.kibo.fp.lib.AnsiColors;
+
+/**
+ * Gravity between every pair of bodies approximated with a Barnes-Hut quadtree, in O(n log n) instead of O(n^2).
+ * The tree is rebuilt at every call over the bounding square of the bodies: a node is split in four quadrants until it
+ * holds at most LEAF_SIZE bodies, and a node seen from a body under an angle (side / distance) smaller than the
+ * opening angle is replaced by a point with its mass at its center of mass. An opening angle of 0 gives the exact
+ * pairwise sums. Every body is pulled by all the others, star included, so unlike HierarchicalGravity the star moves.
+ * <p>
+ * The bodies are sorted so that every node covers a contiguous range of them, and the nodes are stored in depth first
+ * order with the index of the end of their subtree, so the tree is walked without a stack. The accelerations are
+ * computed in parallel with fork/join, one task per subtree, so that each task walks the tree for nearby bodies.
+ * An instance reuses its tree between calls and mustn't be used by two simulations at the same time
+ * @see OrbitalSimulation
+ */
+public class BarnesHutGravity implements GravityModel {
+  public static final double DEFAULT_OPENING_ANGLE = 0.5;
+  public static final int LEAF_SIZE = 8;
+  public static final int PARALLEL_THRESHOLD = 1024;
+  // bodies closer than the side of the root / 2^MAX_DEPTH share the same leaf
+  private static final int MAX_DEPTH = 48;
+
+  private final double gravitationalConstant;
+  private final double openingAngleSq;
+  private final double softeningSq;
+
+  // bodies sorted by node, and position of every body in the sorted order
+  private int[] order = new int[0];
+  private int[] rank = new int[0];
+  private int[] partition = new int[0];
+
+  private int nodeCount;
+  private int[] nodeFrom = new int[16];
+  private int[] nodeTo = new int[16];
+  private int[] nodeEnd = new int[16];
+  private double[] nodeSizeSq = new double[16];
+  private double[] nodeMass = new double[16];
+  private double[] nodeCenterX = new double[16];
+  private double[] nodeCenterY = new double[16];
+
+  /**
+   * @param gravitationalConstant in the units of mass, distance and time of the simulation
+   * @see #BarnesHutGravity(double, double, double)
+   */
+  public BarnesHutGravity(double gravitationalConstant) {
+    this(gravitationalConstant, DEFAULT_OPENING_ANGLE, 0);
+  }
+
+  /**
+   * @param gravitationalConstant in the units of mass, distance and time of the simulation
+   * @param openingAngle below which a node is approximated by its center of mass, 0 for exact sums
+   * @param softening length added to every distance to bound the pull of close encounters, 0 for none
+   * @throws IllegalArgumentException if the opening angle or the softening are negative
+   */
+  public BarnesHutGravity(double gravitationalConstant, double openingAngle, double softening)
+      throws IllegalArgumentException {
+    if (!(openingAngle >= 0) || !(softening >= 0))
+      throw new IllegalArgumentException(
+          AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nOpening angle and softening can't be negative");
+
+    this.gravitationalConstant = gravitationalConstant;
+    this.openingAngleSq = openingAngle * openingAngle;
+    this.softeningSq = softening * softening;
+  }
+
+  @Override
+  public void computeAccelerations(double[] x, double[] y, double[] masses, int[] parents, double[] ax, double[] ay) {
+    int count = x.length;
+    if (count == 0)
+      return;
+
+    buildTree(x, y, masses);
+
+    AccelerationTask root = new AccelerationTask(0, x, y, masses, ax, ay);
+    if (count <= PARALLEL_THRESHOLD)
+      root.compute();
+    else
+      ForkJoinPool.commonPool().invoke(root);
+  }
+
+  private void buildTree(double[] x, double[] y, double[] masses) {
+    int count = x.length;
+    if (order.length != count) {
+      order = new int[count];
+      rank = new int[count];
+      partition = new int[count];
+    }
+
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+      minX = Math.min(minX, x[i]);
+      minY = Math.min(minY, y[i]);
+      maxX = Math.max(maxX, x[i]);
+      maxY = Math.max(maxY, y[i]);
+    }
+    // slightly larger than the bounding box, so that the bodies on the upper edges fall inside the root
+    double size = Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL) * (1 + 1e-9);
+
+    nodeCount = 0;
+    buildNode(x, y, masses, 0, count, minX, minY, size, 0);
+
+    for (int k = 0; k < count; k++)
+      rank[order[k]] = k;
+  }
+
+  /**Builds the subtree of the bodies order[from, to) inside the given square, after the nodes built so far
+   */
+  private void buildNode(double[] x, double[] y, double[] masses, int from, int to, double minX, double minY,
+      double size, int depth) {
+    int node = nodeCount++;
+    ensureNodeCapacity(nodeCount);
+    nodeFrom[node] = from;
+    nodeTo[node] = to;
+    nodeSizeSq[node] = size * size;
+
+    double mass = 0, weightedX = 0, weightedY = 0;
+    if (to - from <= LEAF_SIZE || depth == MAX_DEPTH) {
+      for (int k = from; k < to; k++) {
+        int body = order[k];
+        mass += masses[body];
+        weightedX += masses[body] * x[body];
+        weightedY += masses[body] * y[body];
+      }
+    } else {
+      double half = size / 2;
+      int[] starts = partitionQuadrants(x, y, from, to, minX + half, minY + half);
+
+      for (int quadrant = 0; quadrant < 4; quadrant++) {
+        if (starts[quadrant] == starts[quadrant + 1])
+          continue;
+
+        int child = nodeCount;
+        buildNode(x, y, masses, starts[quadrant], starts[quadrant + 1], minX + ((quadrant & 1) != 0 ? half : 0),
+            minY + ((quadrant & 2) != 0 ? half : 0), half, depth + 1);
+        mass += nodeMass[child];
+        weightedX += nodeMass[child] * nodeCenterX[child];
+        weightedY += nodeMass[child] * nodeCenterY[child];
+      }
+    }
+
+    nodeEnd[node] = nodeCount;
+    nodeMass[node] = mass;
+    // a node without mass doesn't pull, any point will do
+    nodeCenterX[node] = mass > 0 ? weightedX / mass : minX + size / 2;
+    nodeCenterY[node] = mass > 0 ? weightedY / mass : minY + size / 2;
+  }
+
+  /**Sorts order[from, to) by quadrant: bit 0 set on the right of middleX, bit 1 set above middleY
+   * @return the first index of every quadrant, followed by to
+   */
+  private int[] partitionQuadrants(double[] x, double[] y, int from, int to, double middleX, double middleY) {
+    int[] starts = new int[5];
+    for (int k = from; k < to; k++)
+      starts[quadrant(x, y, order[k], middleX, middleY) + 1]++;
+
+    starts[0] = from;
+    for (int quadrant = 1; quadrant <= 4; quadrant++)
+      starts[quadrant] += starts[quadrant - 1];
+
+    int[] next = { starts[0], starts[1], starts[2], starts[3] };
+    for (int k = from; k < to; k++)
+      partition[next[quadrant(x, y, order[k], middleX, middleY)]++] = order[k];
+    System.arraycopy(partition, from, order, from, to - from);
+
+    return starts;
+  }
+
+  private static int quadrant(double[] x, double[] y, int body, double middleX, double middleY) {
+    return (x[body] >= middleX ? 1 : 0) | (y[body] >= middleY ? 2 : 0);
+  }
+
+  private void ensureNodeCapacity(int capacity) {
+    if (capacity <= nodeFrom.length)
+      return;
+
+    int length = Math.max(capacity, nodeFrom.length * 2);
+    nodeFrom = Arrays.copyOf(nodeFrom, length);
+    nodeTo = Arrays.copyOf(nodeTo, length);
+    nodeEnd = Arrays.copyOf(nodeEnd, length);
+    nodeSizeSq = Arrays.copyOf(nodeSizeSq, length);
+    nodeMass = Arrays.copyOf(nodeMass, length);
+    nodeCenterX = Arrays.copyOf(nodeCenterX, length);
+    nodeCenterY = Arrays.copyOf(nodeCenterY, length);
+  }
+
+  /**Walks the tree from the root for a body, opening the nodes that contain it or that are seen under a wide angle
+   */
+  private void computeAcceleration(int body, double[] x, double[] y, double[] masses, double[] ax, double[] ay) {
+    double bodyX = x[body], bodyY = y[body];
+    int bodyRank = rank[body];
+    double accelerationX = 0, accelerationY = 0;
+
+    int node = 0;
+    while (node < nodeCount) {
+      boolean leaf = nodeEnd[node] == node + 1;
+
+      if (leaf) {
+        for (int k = nodeFrom[node]; k < nodeTo[node]; k++) {
+          int other = order[k];
+          double dx = x[other] - bodyX;
+          double dy = y[other] - bodyY;
+          double distanceSq = dx * dx + dy * dy + softeningSq;
+          if (other == body || distanceSq == 0)
+            continue;
+
+          double pull = masses[other] / (distanceSq * Math.sqrt(distanceSq));
+          accelerationX += pull * dx;
+          accelerationY += pull * dy;
+        }
+        node++;
+        continue;
+      }
+
+      boolean containsBody = nodeFrom[node] <= bodyRank && bodyRank < nodeTo[node];
+      double dx = nodeCenterX[node] - bodyX;
+      double dy = nodeCenterY[node] - bodyY;
+      double distanceSq = dx * dx + dy * dy + softeningSq;
+
+      if (!containsBody && nodeSizeSq[node] < openingAngleSq * distanceSq) {
+        double pull = nodeMass[node] / (distanceSq * Math.sqrt(distanceSq));
+        accelerationX += pull * dx;
+        accelerationY += pull * dy;
+        node = nodeEnd[node];
+      } else {
+        node++;
+      }
+    }
+
+    ax[body] = gravitationalConstant * accelerationX;
+    ay[body] = gravitationalConstant * accelerationY;
+  }
+
+  /**
+   * Computes the accelerations of the bodies of a subtree, forking a task per child for large subtrees
+   */
+  private class AccelerationTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int node;
+    private final double[] x;
+    private final double[] y;
+    private final double[] masses;
+    private final double[] ax;
+    private final double[] ay;
+
+    AccelerationTask(int node, double[] x, double[] y, double[] masses, double[] ax, double[] ay) {
+      this.node = node;
+      this.x = x;
+      this.y = y;
+      this.masses = masses;
+      this.ax = ax;
+      this.ay = ay;
+    }
+
+    @Override
+    protected void compute() {
+      boolean leaf = nodeEnd[node] == node + 1;
+
+      if (leaf || nodeTo[node] - nodeFrom[node] <= PARALLEL_THRESHOLD) {
+        for (int k = nodeFrom[node]; k < nodeTo[node]; k++)
+          computeAcceleration(order[k], x, y, masses, ax, ay);
+        return;
+      }
+
+      ArrayList<AccelerationTask> children = new ArrayList<>(4);
+      for (int child = node + 1; child < nodeEnd[node]; child = nodeEnd[child])
+        children.add(new AccelerationTask(child, x, y, masses, ax, ay));
+      invokeAll(children);
+    }
+  }
+}
@@ -0,0 +1,348 @@
+package plus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+/**
+ * Headless execution of star system commands, one per line, without prompts, delays or colors.
+ * Every command writes one JSON line with its status and result, so the output can be read by other programs.
+ * Values containing spaces go between double quotes. The commands are:
+ * <ul>
+ * <li>star NAME MASS</li>
+ * <li>load FILE, save FILE</li>
+ * <li>relative on|off</li>
+ * <li>add-planet NAME MASS X Y</li>
+ * <li>add-satellite PLANET NAME MASS X Y</li>
+ * <li>remove-planet PLANET, remove-satellite SATELLITE</li>
+ * <li>search QUERY</li>
+ * <li>route START FINISH</li>
+ * <li>planner hierarchy, planner shortest RANGE: the planner of the following routes, back to hierarchy on a new star</li>
+ * <li>route-matrix FILE: the route lengths between all the planets, see RouteMatrix</li>
+ * <li>center-of-mass</li>
+ * <li>collisions</li>
+ * </ul>
+ * Lines starting with # are comments.
+ */
+public class BatchCommandRunner {
+  private Star star;
+  private boolean relativePositioning;
+  private RoutePlanner routePlanner;
+
+  /**Runs every command of the reader, a failed command doesn't stop the following ones
+   * @param reader of the commands
+   * @param writer of the results, flushed but not closed
+   * @throws IOException if the commands can't be read or the results can't be written
+   */
+  public void run(Reader reader, Writer writer) throws IOException {
+    BufferedReader commands = new BufferedReader(reader, 1 << 16);
+    BufferedWriter output = new BufferedWriter(writer, 1 << 16);
+    StringBuilder result = new StringBuilder();
+
+    String line;
+    int lineNumber = 0;
+    while ((line = commands.readLine()) != null) {
+      lineNumber++;
+      ArrayList<String> tokens = tokenize(line);
+      if (tokens.isEmpty() || tokens.get(0).startsWith("#"))
+        continue;
+
+      result.setLength(0);
+      result.append("{\"line\":").append(lineNumber).append(",\"command\":");
+      StarSystemCatalog.appendJsonString(result, tokens.get(0));
+      int resultStart = result.length();
+      try {
+        result.append(",\"status\":\"ok\"");
+        execute(tokens, result);
+      } catch (RuntimeException | IOException e) {
+        result.setLength(resultStart);
+        result.append(",\"status\":\"error\",\"message\":");
+        StarSystemCatalog.appendJsonString(result, withoutColors(String.valueOf(e.getMessage())));
+      }
+      result.append('}');
+
+      output.append(result);
+      output.newLine();
+    }
+
+    output.flush();
+  }
+
+  private void execute(ArrayList<String> tokens, StringBuilder result) throws IOException {
+    String command = tokens.get(0);
+
+    switch (command) {
+      case "star":
+        checkArguments(tokens, 2);
+        star = new Star(tokens.get(1), parseMass(tokens.get(2)), Position.ORIGIN);
+        routePlanner = star;
+        appendField(result, "id", star.getID());
+        break;
+
+      case "load":
+        checkArguments(tokens, 1);
+        star = StarSystemFile.load(Path.of(tokens.get(1)));
+        routePlanner = star;
+        appendField(result, "id", star.getID());
+        break;
+
+      case "save":
+        checkArguments(tokens, 1);
+        StarSystemFile.save(requireStar(), Path.of(tokens.get(1)));
+        break;
+
+      case "relative":
+        checkArguments(tokens, 1);
+        relativePositioning = tokens.get(1).equalsIgnoreCase("on");
+        break;
+
+      case "add-planet": {
+        checkArguments(tokens, 4);
+        Position position = new Position(Double.parseDouble(tokens.get(3)), Double.parseDouble(tokens.get(4)));
+        if (!requireStar().isPositionFree(position))
+          throw new IllegalArgumentException("Position already taken");
+
+        Planet planet = new Planet(tokens.get(1), parseMass(tokens.get(2)), position);
+        star.addPlanet(planet);
+        appendField(result, "id", planet.getID());
+        break;
+      }
+
+      case "add-satellite": {
+        checkArguments(tokens, 5);
+        Planet planet = requireStar().searchPlanet(tokens.get(1));
+        if (planet == null)
+          throw new IllegalArgumentException("Planet not found");
+
+        Satellite satellite = new Satellite(tokens.get(2), parseMass(tokens.get(3)),
+            new Position(Double.parseDouble(tokens.get(4)), Double.parseDouble(tokens.get(5))), relativePositioning,
+            planet);
+        if (!star.isPositionFree(satellite.getPosition()))
+          throw new IllegalArgumentException("Position already taken");
+
+        planet.addSatellite(satellite);
+        appendField(result, "id", satellite.getID());
+        break;
+      }
+
+      case "remove-planet": {
+        checkArguments(tokens, 1);
+        Planet planet = requireStar().searchPlanet(tokens.get(1));
+        if (planet == null)
+          throw new IllegalArgumentException("Planet not found");
+
+        star.removePlanet(planet);
+        appendField(result, "id", planet.getID());
+        break;
+      }
+
+      case "remove-satellite": {
+        checkArguments(tokens, 1);
+        CelestialBody celestialBody = requireStar().searchCelestialBody(tokens.get(1));
+        Planet planet = celestialBody instanceof Satellite ? star.getOrbitingPlanet((Satellite) celestialBody) : null;
+        if (planet == null)
+          throw new IllegalArgumentException("Satellite not found");
+
+        planet.removeSatellite((Satellite) celestialBody);
+        appendField(result, "id", celestialBody.getID());
+        break;
+      }
+
+      case "search": {
+        checkArguments(tokens, 1);
+        CelestialBody celestialBody = requireStar().searchCelestialBody(tokens.get(1));
+        if (celestialBody == null)
+          throw new IllegalArgumentException("Celestial body not found");
+
+        appendCelestialBody(result, star, celestialBody);
+        break;
+      }
+
+      case "route": {
+        checkArguments(tokens, 2);
+        CelestialBody start = requireStar().searchCelestialBody(tokens.get(1));
+        CelestialBody finish = star.searchCelestialBody(tokens.get(2));
+        if (start == null || finish == null)
+          throw new IllegalArgumentException("One or both the celestial bodies weren't found");
+
+        appendRoute(result, routePlanner, start, finish);
+        break;
+      }
+
+      case "planner":
+        if (tokens.size() == 2 && tokens.get(1).equals("hierarchy")) {
+          routePlanner = requireStar();
+        } else if (tokens.size() == 3 && tokens.get(1).equals("shortest")) {
+          routePlanner = new ShortestRoutePlanner(requireStar(), Double.parseDouble(tokens.get(2)));
+        } else {
+          throw new IllegalArgumentException("Expected hierarchy or shortest RANGE");
+        }
+        break;
+
+      case "route-matrix":
+        checkArguments(tokens, 1);
+        RouteMatrix.write(requireStar(), Path.of(tokens.get(1)));
+        result.append(",\"planets\":").append(star.getPlanets().size());
+        break;
+
+      case "center-of-mass": {
+        Position centerOfMass = requireStar().centerOfMass();
+        appendField(result, "x", centerOfMass.getX());
+        appendField(result, "y", centerOfMass.getY());
+        break;
+      }
+
+      case "collisions": {
+        appendCollisions(result, requireStar().detectCollisions());
+        break;
+      }
+
+      default:
+        throw new IllegalArgumentException("Unknown command");
+    }
+  }
+
+  private Star requireStar() {
+    if (star == null)
+      throw new IllegalStateException("No star, use the star or load command first");
+
+    return star;
+  }
+
+  private static void checkArguments(ArrayList<String> tokens, int arguments) {
+    if (tokens.size() - 1 != arguments)
+      throw new IllegalArgumentException(String.format("Expected %d arguments", arguments));
+  }
+
+  private static double parseMass(String mass) {
+    double value = Double.parseDouble(mass);
+    if (!(value >= 0))
+      throw new IllegalArgumentException("The mass can't be negative");
+
+    return value;
+  }
+
+  /**Appends the fields describing a celestial body to a JSON object
+   * @param result JSON object being built, without the closing brace
+   * @param star of the system the celestial body belongs to
+   * @param celestialBody to describe
+   */
+  static void appendCelestialBody(StringBuilder result, Star star, CelestialBody celestialBody) {
+    String type = celestialBody instanceof Satellite ? "satellite" : celestialBody instanceof Planet ? "planet" : "star";
+
+    appendField(result, "type", type);
+    appendField(result, "id", celestialBody.getID());
+    appendField(result, "name", celestialBody.getName());
+    appendField(result, "mass", celestialBody.getMass());
+    appendField(result, "x", celestialBody.getPosition().getX());
+    appendField(result, "y", celestialBody.getPosition().getY());
+
+    if (celestialBody instanceof Satellite) {
+      Satellite satellite = (Satellite) celestialBody;
+      Planet planet = star.getOrbitingPlanet(satellite);
+
+      appendField(result, "relativeX", satellite.getRelativePosition().getX());
+      appendField(result, "relativeY", satellite.getRelativePosition().getY());
+      if (planet != null)
+        appendField(result, "planet", planet.getID());
+    }
+  }
+
+  /**Appends the IDs of the route elements and the route length to a JSON object
+   * @param result JSON object being built, without the closing brace
+   * @param routePlanner calculating the route
+   * @param start celestial body where the route starts
+   * @param finish celestial body to reach
+   */
+  static void appendRoute(StringBuilder result, RoutePlanner routePlanner, CelestialBody start,
+      CelestialBody finish) {
+    LinkedList<CelestialBody> route = routePlanner.calculateRoute(start, finish);
+
+    result.append(",\"route\":[");
+    boolean first = true;
+    for (CelestialBody current : route) {
+      if (!first)
+        result.append(',');
+      StarSystemCatalog.appendJsonString(result, current.getID());
+      first = false;
+    }
+    result.append(']');
+    appendField(result, "length", routePlanner.calculateRouteLength(start, finish));
+  }
+
+  /**Appends the number of collisions and the IDs of the colliding pairs to a JSON object
+   * @param result JSON object being built, without the closing brace
+   * @param collisions to append
+   */
+  static void appendCollisions(StringBuilder result, ArrayList<Collision> collisions) {
+    result.append(",\"count\":").append(collisions.size()).append(",\"pairs\":[");
+    for (int i = 0; i < collisions.size(); i++) {
+      if (i > 0)
+        result.append(',');
+      result.append('[');
+      StarSystemCatalog.appendJsonString(result, collisions.get(i).getFirst().getID()).append(',');
+      StarSystemCatalog.appendJsonString(result, collisions.get(i).getSecond().getID()).append(']');
+    }
+    result.append(']');
+  }
+
+  static void appendField(StringBuilder result, String name, String value) {
+    result.append(',');
+    StarSystemCatalog.appendJsonString(result, name).append(':');
+    StarSystemCatalog.appendJsonString(result, value);
+  }
+
+  static void appendField(StringBuilder result, String name, double value) {
+    result.append(',');
+    StarSystemCatalog.appendJsonString(result, name).append(':');
+    // JSON has no NaN nor infinity
+    if (Double.isFinite(value))
+      result.append(value);
+    else
+      result.append("null");
+  }
+
+  /**
+   * @return the message without the ANSI escape sequences used by the console messages
+   */
+  static String withoutColors(String message) {
+    return message.replaceAll("\u001B\\[[;\\d]*m", "").replace('\n', ' ');
+  }
+
+  /**Splits a command line on whitespace, double quotes group words containing spaces
+   * @param line to split
+   * @return the tokens of the line
+   */
+  private static ArrayList<String> tokenize(String line) {
+    ArrayList<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    boolean quoted = false;
+    boolean inToken = false;
+
+    for (int i = 0; i < line.length(); i++) {
+      char character = line.charAt(i);
+
+      if (character == '"') {
+        quoted = !quoted;
+        inToken = true;
+      } else if (!quoted && Character.isWhitespace(character)) {
+        if (inToken)
+          tokens.add(token.toString());
+        token.setLength(0);
+        inToken = false;
+      } else {
+        token.append(character);
+        inToken = true;
+      }
+    }
+    if (inToken)
+      tokens.add(token.toString());
+
+    return tokens;
+  }
+}
@@ -1,23 +1,55 @@
 package plus;
 
-import it.kibo.fp.lib.RandomDraws;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CelestialBody {
-  private static int counter = 1000;
+  private static final AtomicLong counter = new AtomicLong(1000);
 
-  private final String ID;
+  private final long ID;
+  private String stringID;
   private String name;
   private double mass;
   private Position position;
+  private int slot = -1;
+  private double parentDistance;
+  private double starDistance;
 
   public CelestialBody(String name, double mass, Position position) {
     this.ID = generateID();
-    this.name = name;
+    this.name = name.intern();
     this.mass = mass;
     this.position = position;
   }
 
+  /**Restores a celestial body with a known ID, the IDs generated afterwards will be greater than it
+   * @param ID of the celestial body
+   * @param name of the celestial body
+   * @param mass of the celestial body
+   * @param position of the celestial body
+   */
+  CelestialBody(long ID, String name, double mass, Position position) {
+    this.ID = ID;
+    this.name = name.intern();
+    this.mass = mass;
+    this.position = position;
+
+    counter.accumulateAndGet(ID + 1, Math::max);
+  }
+
+  /**
+   * @return the ID in the CB_number form, rendered on first use
+   */
   public String getID() {
+    String stringID = this.stringID;
+
+    if (stringID == null)
+      this.stringID = stringID = "CB_" + ID;
+
+    return stringID;
+  }
+
+  public long getNumericID() {
     return ID;
   }
 
@@ -33,12 +65,44 @@ public class CelestialBody {
     return position;
   }
 
-  private String generateID() {
-    String ID = String.format("CB_%d", counter);
+  /**
+   * @return the slot of this celestial body in its star system columns, -1 if it isn't stored in any
+   * @see CelestialBodyColumns
+   */
+  int getSlot() {
+    return slot;
+  }
 
-    counter += RandomDraws.drawInteger(1, 100);
+  void setSlot(int slot) {
+    this.slot = slot;
+  }
 
-    return ID;
+  /**
+   * @return the distance from the body this celestial body orbits around, 0 for a star
+   */
+  public double getParentDistance() {
+    return parentDistance;
+  }
+
+  /**
+   * @return the distance from the star along the hierarchy, through the orbiting planet for a satellite, 0 for a star
+   */
+  public double getStarDistance() {
+    return starDistance;
+  }
+
+  /**Caches the hierarchy distances, set by the star when the celestial body joins its system
+   */
+  void setHierarchyDistances(double parentDistance, double starDistance) {
+    this.parentDistance = parentDistance;
+    this.starDistance = starDistance;
+  }
+
+  /**
+   * @return a unique ID, safe to call from any thread
+   */
+  private static long generateID() {
+    return counter.getAndAdd(ThreadLocalRandom.current().nextInt(1, 101));
   }
 
   @Override
@@ -48,11 +112,16 @@ public class CelestialBody {
 
     CelestialBody objCelestialBody = (CelestialBody) obj;
 
-    return ID.equals(objCelestialBody.ID);
+    return ID == objCelestialBody.ID;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(ID);
   }
 
   @Override
   public String toString() {
-    return String.format("{ID: %s, Name: %s, Mass: %.2f, Position: %s}", ID, name, mass, position);
+    return String.format("{ID: %s, Name: %s, Mass: %.2f, Position: %s}", getID(), name, mass, position);
   }
 }
@@ -0,0 +1,105 @@
+package plus;
+
+import java.util.Arrays;
+
+/**
+ * Columnar storage of the numeric data of a star system, enabled with Star.setColumnar.
+ * Positions and masses of every celestial body are kept in parallel primitive arrays, so aggregate scans
+ * run over contiguous memory instead of following one object and one position per body. Every body owns a slot in
+ * the columns, removals move the last slot into the freed one to keep the columns dense.
+ * <p>
+ * The columns are a copy of the data of the celestial bodies, which stay the owners of it, so they add memory instead
+ * of saving it: three doubles and one reference per slot, 28 or 32 bytes depending on compressed references, times
+ * the capacity, which is at most twice the number of bodies.
+ * @see Star#setColumnar(boolean)
+ */
+public class CelestialBodyColumns {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private CelestialBody[] celestialBodies;
+  private double[] x;
+  private double[] y;
+  private double[] mass;
+  private int size;
+
+  public CelestialBodyColumns() {
+    celestialBodies = new CelestialBody[INITIAL_CAPACITY];
+    x = new double[INITIAL_CAPACITY];
+    y = new double[INITIAL_CAPACITY];
+    mass = new double[INITIAL_CAPACITY];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public CelestialBody getCelestialBody(int slot) {
+    return celestialBodies[slot];
+  }
+
+  public double getX(int slot) {
+    return x[slot];
+  }
+
+  public double getY(int slot) {
+    return y[slot];
+  }
+
+  public double getMass(int slot) {
+    return mass[slot];
+  }
+
+  /**Stores the celestial body in a new slot and records the slot on the body
+   * @param celestialBody to store
+   */
+  public void add(CelestialBody celestialBody) {
+    if (size == celestialBodies.length)
+      grow(size * 2);
+
+    celestialBodies[size] = celestialBody;
+    x[size] = celestialBody.getPosition().getX();
+    y[size] = celestialBody.getPosition().getY();
+    mass[size] = celestialBody.getMass();
+    celestialBody.setSlot(size);
+
+    size++;
+  }
+
+  /**Frees the slot of the celestial body, moving the last slot into it
+   * @param celestialBody to remove
+   */
+  public void remove(CelestialBody celestialBody) {
+    int slot = celestialBody.getSlot();
+    if (slot < 0 || slot >= size || celestialBodies[slot] != celestialBody)
+      return;
+
+    int last = --size;
+    if (slot != last) {
+      CelestialBody moved = celestialBodies[last];
+
+      celestialBodies[slot] = moved;
+      x[slot] = x[last];
+      y[slot] = y[last];
+      mass[slot] = mass[last];
+      moved.setSlot(slot);
+    }
+
+    celestialBodies[last] = null;
+    celestialBody.setSlot(-1);
+  }
+
+  /**Makes room for at least capacity celestial bodies
+   * @param capacity minimum number of slots
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > celestialBodies.length)
+      grow(Math.max(capacity, celestialBodies.length * 2));
+  }
+
+  private void grow(int capacity) {
+    celestialBodies = Arrays.copyOf(celestialBodies, capacity);
+    x = Arrays.copyOf(x, capacity);
+    y = Arrays.copyOf(y, capacity);
+    mass = Arrays.copyOf(mass, capacity);
+  }
+}
@@ -0,0 +1,161 @@
+package plus;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join computation of the mass and mass weighted coordinates of a range of slots in a star system columns, or of
+ * a range of celestial bodies when the columns are disabled.
+ * Ranges longer than THRESHOLD are split in halves, so the shape of the reduction only depends on the number of
+ * slots and not on how many threads run it: the same system always gives the same result. Every partial sum is
+ * compensated (Kahan-Babuska), so the error stays within a few ulps of the exact sums whatever the number of bodies,
+ * while a plain sequential loop may drift by up to n * 2^-53 relative to them; the two results therefore agree within
+ * a relative tolerance of n * 2^-52.
+ */
+public class CenterOfMassTask extends RecursiveTask<CenterOfMassTask.Sums> {
+  private static final long serialVersionUID = 1L;
+
+  public static final int THRESHOLD = 4096;
+
+  /**
+   * Compensated running sums of the mass and of the mass weighted coordinates
+   */
+  public static class Sums {
+    private double mass;
+    private double massCompensation;
+    private double weightedX;
+    private double weightedXCompensation;
+    private double weightedY;
+    private double weightedYCompensation;
+
+    public double getMass() {
+      return mass + massCompensation;
+    }
+
+    public double getWeightedX() {
+      return weightedX + weightedXCompensation;
+    }
+
+    public double getWeightedY() {
+      return weightedY + weightedYCompensation;
+    }
+
+    /**
+     * @return the center of mass of the summed bodies
+     */
+    public Position centerOfMass() {
+      double totalMass = getMass();
+
+      return new Position(getWeightedX() / totalMass, getWeightedY() / totalMass);
+    }
+
+    /**Adds a body to the sums
+     */
+    void add(double mass, double x, double y) {
+      double sum;
+
+      sum = this.mass + mass;
+      massCompensation += compensation(this.mass, mass, sum);
+      this.mass = sum;
+
+      sum = weightedX + mass * x;
+      weightedXCompensation += compensation(weightedX, mass * x, sum);
+      weightedX = sum;
+
+      sum = weightedY + mass * y;
+      weightedYCompensation += compensation(weightedY, mass * y, sum);
+      weightedY = sum;
+    }
+
+    /**Removes a body added before from the sums. The products are the same of add, so they cancel exactly and the
+     * compensation recovers what the subtraction rounds away
+     */
+    void subtract(double mass, double x, double y) {
+      add(-mass, x, y);
+    }
+
+    private void merge(Sums other) {
+      double sum;
+
+      sum = mass + other.mass;
+      massCompensation += compensation(mass, other.mass, sum) + other.massCompensation;
+      mass = sum;
+
+      sum = weightedX + other.weightedX;
+      weightedXCompensation += compensation(weightedX, other.weightedX, sum) + other.weightedXCompensation;
+      weightedX = sum;
+
+      sum = weightedY + other.weightedY;
+      weightedYCompensation += compensation(weightedY, other.weightedY, sum) + other.weightedYCompensation;
+      weightedY = sum;
+    }
+
+    /**
+     * @return the rounding error of sum = a + b
+     */
+    private static double compensation(double a, double b, double sum) {
+      return Math.abs(a) >= Math.abs(b) ? (a - sum) + b : (b - sum) + a;
+    }
+  }
+
+  // one of the two is null
+  private final CelestialBodyColumns columns;
+  private final CelestialBody[] celestialBodies;
+  private final int from;
+  private final int to;
+
+  /**
+   * @param columns to sum
+   * @param from first slot, inclusive
+   * @param to last slot, exclusive
+   */
+  public CenterOfMassTask(CelestialBodyColumns columns, int from, int to) {
+    this(columns, null, from, to);
+  }
+
+  /**
+   * @param celestialBodies to sum
+   * @param from first index, inclusive
+   * @param to last index, exclusive
+   */
+  public CenterOfMassTask(CelestialBody[] celestialBodies, int from, int to) {
+    this(null, celestialBodies, from, to);
+  }
+
+  private CenterOfMassTask(CelestialBodyColumns columns, CelestialBody[] celestialBodies, int from, int to) {
+    this.columns = columns;
+    this.celestialBodies = celestialBodies;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected Sums compute() {
+    if (to - from <= THRESHOLD) {
+      Sums sums = new Sums();
+
+      if (columns != null) {
+        for (int slot = from; slot < to; slot++)
+          sums.add(columns.getMass(slot), columns.getX(slot), columns.getY(slot));
+      } else {
+        for (int i = from; i < to; i++) {
+          Position position = celestialBodies[i].getPosition();
+          sums.add(celestialBodies[i].getMass(), position.getX(), position.getY());
+        }
+      }
+
+      return sums;
+    }
+
+    int middle = (from + to) >>> 1;
+    CenterOfMassTask left = new CenterOfMassTask(columns, celestialBodies, from, middle);
+    CenterOfMassTask right = new CenterOfMassTask(columns, celestialBodies, middle, to);
+
+    left.fork();
+    Sums sums = right.compute();
+    Sums leftSums = left.join();
+
+    leftSums.merge(sums);
+
+    return leftSums;
+  }
+}
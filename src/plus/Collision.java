@@ -0,0 +1,28 @@
+package plus;
+
+/**
+ * A pair of celestial bodies whose orbits may cross in the future
+ * @see CollisionDetector
+ */
+public class Collision {
+  private final CelestialBody first;
+  private final CelestialBody second;
+
+  public Collision(CelestialBody first, CelestialBody second) {
+    this.first = first;
+    this.second = second;
+  }
+
+  public CelestialBody getFirst() {
+    return first;
+  }
+
+  public CelestialBody getSecond() {
+    return second;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (%s) <> %s (%s)", first.getName(), first.getID(), second.getName(), second.getID());
+  }
+}
@@ -0,0 +1,168 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Sweep and prune collision detection over the radial bands of a star system.
+ * Every satellite is reduced to the interval of distances from the star it can reach, [minStarDistance,
+ * maxStarDistance], and every planet to its distance from the star. Sorting the satellite intervals by their lower
+ * bound and sweeping them once finds the overlapping satellites, while the planets inside the band of a satellite are
+ * found with a binary search over the sorted planet distances, so the whole detection is O(n log n + k), where k is the
+ * number of collisions found. The star collides with a satellite whose orbit passes through it.
+ */
+public class CollisionDetector {
+  private static class Interval {
+    private final Satellite satellite;
+    private final Planet orbitingPlanet;
+    private final double min;
+    private final double max;
+
+    private Interval(Satellite satellite, Planet orbitingPlanet, double min, double max) {
+      this.satellite = satellite;
+      this.orbitingPlanet = orbitingPlanet;
+      this.min = min;
+      this.max = max;
+    }
+  }
+
+  private final StarSystemSnapshot snapshot;
+
+  /**
+   * @param snapshot of the star system to check
+   */
+  public CollisionDetector(StarSystemSnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**Finds every pair of celestial bodies that may collide in the future.
+   * Two planets collide only if they share the same position, the star collides with a satellite whose orbit radius
+   * is the distance of its orbiting planet from the star, a satellite never collides with its own orbiting planet and
+   * any other pair collides if their radial bands overlap
+   * @return the list of the colliding pairs, empty if there are none
+   */
+  public ArrayList<Collision> detect() {
+    ArrayList<Collision> collisions = new ArrayList<>();
+
+    detectPlanetCollisions(collisions);
+    detectStarCollisions(collisions);
+    sweep(sortedIntervals(), collisions);
+
+    return collisions;
+  }
+
+  /**
+   * @param collisions where to add the pairs of planets sharing the same position
+   */
+  private void detectPlanetCollisions(ArrayList<Collision> collisions) {
+    HashMap<Position, ArrayList<Planet>> planetsByPosition = new HashMap<>();
+
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+      Planet planet = planetSnapshot.getPlanet();
+      ArrayList<Planet> samePositionPlanets = planetsByPosition.computeIfAbsent(planet.getPosition(),
+          key -> new ArrayList<>(1));
+
+      for (Planet samePositionPlanet : samePositionPlanets)
+        collisions.add(new Collision(samePositionPlanet, planet));
+
+      samePositionPlanets.add(planet);
+    }
+  }
+
+  /**
+   * @param collisions where to add the pairs of the star and the satellites whose orbit passes through it
+   */
+  private void detectStarCollisions(ArrayList<Collision> collisions) {
+    Star star = snapshot.getStar();
+    Position starPosition = star.getPosition();
+
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+      double planetToStarDistance = planetSnapshot.getPlanet().getPosition().distance(starPosition);
+
+      for (Satellite satellite : planetSnapshot.getSatellites()) {
+        if (satellite.getRelativePosition().distance(starPosition) == planetToStarDistance)
+          collisions.add(new Collision(star, satellite));
+      }
+    }
+  }
+
+  /**
+   * @return the radial intervals of every satellite in the system, sorted by lower bound
+   */
+  private ArrayList<Interval> sortedIntervals() {
+    ArrayList<Interval> intervals = new ArrayList<>();
+
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+      for (Satellite satellite : planetSnapshot.getSatellites())
+        intervals.add(new Interval(satellite, planetSnapshot.getPlanet(), satellite.getMinStarDistance(),
+            satellite.getMaxStarDistance()));
+    }
+
+    intervals.sort(Comparator.comparingDouble(interval -> interval.min));
+
+    return intervals;
+  }
+
+  /**Sweeps the sorted satellite intervals keeping only the ones that may still overlap the next lower bound, and
+   * pairs every satellite with the planets inside its band
+   * @param intervals sorted by lower bound
+   * @param collisions where to add the overlapping pairs
+   */
+  private void sweep(ArrayList<Interval> intervals, ArrayList<Collision> collisions) {
+    Position starPosition = snapshot.getStar().getPosition();
+    List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots = snapshot.getPlanets();
+    Planet[] planets = new Planet[planetSnapshots.size()];
+    double[] planetDistances = new double[planets.length];
+    Integer[] byDistance = new Integer[planets.length];
+    for (int i = 0; i < planets.length; i++) {
+      planets[i] = planetSnapshots.get(i).getPlanet();
+      planetDistances[i] = planets[i].getPosition().distance(starPosition);
+      byDistance[i] = i;
+    }
+    Arrays.sort(byDistance, (first, second) -> Double.compare(planetDistances[first], planetDistances[second]));
+    double[] sortedDistances = new double[planets.length];
+    for (int i = 0; i < planets.length; i++)
+      sortedDistances[i] = planetDistances[byDistance[i]];
+
+    ArrayList<Interval> active = new ArrayList<>();
+    for (Interval current : intervals) {
+      int kept = 0;
+      for (int i = 0; i < active.size(); i++) {
+        Interval other = active.get(i);
+        if (other.max < current.min)
+          continue;
+
+        active.set(kept++, other);
+        collisions.add(new Collision(other.satellite, current.satellite));
+      }
+      active.subList(kept, active.size()).clear();
+      active.add(current);
+
+      for (int i = firstAtLeast(sortedDistances, current.min); i < planets.length
+          && sortedDistances[i] <= current.max; i++) {
+        Planet planet = planets[byDistance[i]];
+        if (planet != current.orbitingPlanet)
+          collisions.add(new Collision(planet, current.satellite));
+      }
+    }
+  }
+
+  /**
+   * @return the index of the first sorted value not lower than the key, the length of the array if there is none
+   */
+  private static int firstAtLeast(double[] sorted, double key) {
+    int low = 0, high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sorted[middle] < key)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+
+    return low;
+  }
+}
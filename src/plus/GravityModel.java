@@ -0,0 +1,19 @@
+package plus;
+
+/**
+ * Computes the gravitational accelerations of the bodies of an orbital simulation from their positions.
+ * Bodies are addressed by index in primitive arrays: index 0 is the star, and parents[i] is the index of the body
+ * body i orbits around (-1 for the star, 0 for the planets, the index of the planet for the satellites)
+ * @see OrbitalSimulation
+ */
+public interface GravityModel {
+  /**Overwrites the accelerations of every body
+   * @param x abscissas of the bodies
+   * @param y ordinates of the bodies
+   * @param masses of the bodies
+   * @param parents indexes of the bodies every body orbits around
+   * @param ax where to store the abscissa components of the accelerations
+   * @param ay where to store the ordinate components of the accelerations
+   */
+  void computeAccelerations(double[] x, double[] y, double[] masses, int[] parents, double[] ax, double[] ay);
+}
@@ -0,0 +1,38 @@
+package plus;
+
+/**
+ * Gravity of the hierarchy of the star system: every body is only pulled by the bodies it orbits around, a planet by
+ * the star and a satellite by its planet and by the star, while the star stays still. The cost of a step is linear in
+ * the number of bodies, and with a single attractor every orbit is an exact Keplerian conic, so integration errors
+ * are easy to spot
+ */
+public class HierarchicalGravity implements GravityModel {
+  private final double gravitationalConstant;
+
+  /**
+   * @param gravitationalConstant in the units of mass, distance and time of the simulation
+   */
+  public HierarchicalGravity(double gravitationalConstant) {
+    this.gravitationalConstant = gravitationalConstant;
+  }
+
+  @Override
+  public void computeAccelerations(double[] x, double[] y, double[] masses, int[] parents, double[] ax, double[] ay) {
+    for (int i = 0; i < x.length; i++) {
+      double accelerationX = 0, accelerationY = 0;
+
+      for (int attractor = parents[i]; attractor >= 0; attractor = parents[attractor]) {
+        double dx = x[attractor] - x[i];
+        double dy = y[attractor] - y[i];
+        double distanceSq = dx * dx + dy * dy;
+        double pull = gravitationalConstant * masses[attractor] / (distanceSq * Math.sqrt(distanceSq));
+
+        accelerationX += pull * dx;
+        accelerationY += pull * dy;
+      }
+
+      ax[i] = accelerationX;
+      ay[i] = accelerationY;
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import it.kibo.fp.lib.AnsiColors;
+
+/**
+ * Propagation of a star system in time with a symplectic leapfrog (kick-drift-kick velocity Verlet) integrator.
+ * The state of every body lives in primitive arrays indexed as in GravityModel, copied from a snapshot of the star
+ * when the simulation is created, and it's advanced in fixed time steps without touching the live system. Every body
+ * starts on a circular orbit around the body it orbits around, counterclockwise. Being symplectic, the integrator
+ * keeps the energy error bounded over any number of steps instead of letting orbits spiral in or out.
+ * The positions at the current time can be read one by one or as a new star, on which collisions and routes are
+ * evaluated as usual
+ * @see GravityModel
+ */
+public class OrbitalSimulation {
+  private final GravityModel gravityModel;
+  private final double timeStep;
+  private final CelestialBody[] bodies;
+  private final HashMap<CelestialBody, Integer> indexes;
+  private final int[] parents;
+  private final double[] masses;
+  private final double[] x;
+  private final double[] y;
+  private final double[] vx;
+  private final double[] vy;
+  private final double[] ax;
+  private final double[] ay;
+  private long steps;
+
+  /**Simulates the star system under the gravity of its hierarchy
+   * @param star whose system has to be simulated
+   * @param gravitationalConstant in the units of mass, distance and time of the simulation
+   * @param timeStep duration of a step
+   * @see HierarchicalGravity
+   */
+  public OrbitalSimulation(Star star, double gravitationalConstant, double timeStep) {
+    this(star, gravitationalConstant, timeStep, new HierarchicalGravity(gravitationalConstant));
+  }
+
+  /**
+   * @param gravityModel computing the accelerations of the bodies
+   * @throws IllegalArgumentException if the time step isn't positive
+   * @see #OrbitalSimulation(Star, double, double)
+   */
+  public OrbitalSimulation(Star star, double gravitationalConstant, double timeStep, GravityModel gravityModel)
+      throws IllegalArgumentException {
+    if (!(timeStep > 0))
+      throw new IllegalArgumentException(
+          AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nThe time step must be positive");
+
+    this.gravityModel = gravityModel;
+    this.timeStep = timeStep;
+
+    StarSystemSnapshot snapshot = star.snapshot();
+    int count = 1;
+    for (StarSystemSnapshot.PlanetSnapshot planet : snapshot.getPlanets())
+      count += 1 + planet.getSatellites().size();
+
+    bodies = new CelestialBody[count];
+    indexes = new HashMap<>(count * 2);
+    parents = new int[count];
+    masses = new double[count];
+    x = new double[count];
+    y = new double[count];
+    vx = new double[count];
+    vy = new double[count];
+    ax = new double[count];
+    ay = new double[count];
+
+    // the star stays still, everything else starts on a circular orbit around its parent
+    addBody(0, star, -1, gravitationalConstant);
+    int i = 1;
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+      int planetIndex = i;
+      addBody(i++, planetSnapshot.getPlanet(), 0, gravitationalConstant);
+
+      List<Satellite> satellites = planetSnapshot.getSatellites();
+      for (int s = 0; s < satellites.size(); s++)
+        addBody(i++, satellites.get(s), planetIndex, gravitationalConstant);
+    }
+
+    gravityModel.computeAccelerations(x, y, masses, parents, ax, ay);
+  }
+
+  private void addBody(int i, CelestialBody body, int parent, double gravitationalConstant) {
+    bodies[i] = body;
+    indexes.put(body, i);
+    parents[i] = parent;
+    masses[i] = body.getMass();
+    x[i] = body.getPosition().getX();
+    y[i] = body.getPosition().getY();
+    if (parent < 0)
+      return;
+
+    double dx = x[i] - x[parent];
+    double dy = y[i] - y[parent];
+    double radius = Math.sqrt(dx * dx + dy * dy);
+    double speed = Math.sqrt(gravitationalConstant * masses[parent] / radius);
+
+    vx[i] = vx[parent] - speed * dy / radius;
+    vy[i] = vy[parent] + speed * dx / radius;
+  }
+
+  /**Advances the system by the given number of time steps. The kicks of consecutive steps are merged, so every step
+   * costs a single computation of the accelerations
+   * @param count of the steps
+   */
+  public void step(long count) {
+    if (count <= 0)
+      return;
+
+    double halfStep = timeStep / 2;
+    kick(halfStep);
+    for (long s = 1; s < count; s++) {
+      drift();
+      gravityModel.computeAccelerations(x, y, masses, parents, ax, ay);
+      kick(timeStep);
+    }
+    drift();
+    gravityModel.computeAccelerations(x, y, masses, parents, ax, ay);
+    kick(halfStep);
+
+    steps += count;
+  }
+
+  private void kick(double duration) {
+    for (int i = 0; i < vx.length; i++) {
+      vx[i] += ax[i] * duration;
+      vy[i] += ay[i] * duration;
+    }
+  }
+
+  private void drift() {
+    for (int i = 0; i < x.length; i++) {
+      x[i] += vx[i] * timeStep;
+      y[i] += vy[i] * timeStep;
+    }
+  }
+
+  /**
+   * @return the simulated time since the creation of the simulation
+   */
+  public double getTime() {
+    return steps * timeStep;
+  }
+
+  public long getSteps() {
+    return steps;
+  }
+
+  public double getTimeStep() {
+    return timeStep;
+  }
+
+  /**
+   * @return the number of simulated bodies, star included
+   */
+  public int size() {
+    return bodies.length;
+  }
+
+  /**
+   * @param body of the simulated system
+   * @return the position of the body at the current time, null if the body isn't simulated
+   */
+  public Position getPosition(CelestialBody body) {
+    Integer i = indexes.get(body);
+
+    return i == null ? null : new Position(x[i], y[i]);
+  }
+
+  /**
+   * @param body of the simulated system
+   * @return the velocity of the body at the current time, as a position vector, null if the body isn't simulated
+   */
+  public Position getVelocity(CelestialBody body) {
+    Integer i = indexes.get(body);
+
+    return i == null ? null : new Position(vx[i], vy[i]);
+  }
+
+  /**Builds a new star system with the bodies of the simulation at their current positions. The celestial bodies keep
+   * their IDs, names and masses, so collisions and routes can be evaluated on it at the current time
+   * @return the star of the new system
+   * @throws IllegalArgumentException if two bodies are at exactly the same position
+   */
+  public Star toStar() throws IllegalArgumentException {
+    CelestialBody simulatedStar = bodies[0];
+    Star star = new Star(simulatedStar.getNumericID(), simulatedStar.getName(), simulatedStar.getMass(),
+        new Position(x[0], y[0]));
+    Planet planet = null;
+    ArrayList<Planet> planets = new ArrayList<>();
+
+    for (int i = 1; i < bodies.length; i++) {
+      Position position = new Position(x[i], y[i]);
+
+      if (parents[i] == 0) {
+        planet = new Planet(bodies[i].getNumericID(), bodies[i].getName(), masses[i], position);
+        planets.add(planet);
+      } else {
+        planet.addSatellite(new Satellite(bodies[i].getNumericID(), bodies[i].getName(), masses[i], position, planet));
+      }
+    }
+    star.addPlanets(planets);
+
+    return star;
+  }
+}
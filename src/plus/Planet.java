@@ -1,42 +1,250 @@
 package plus;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.locks.ReentrantLock;
 
 import it.kibo.fp.lib.AnsiColors;
 
+/**
+ * A planet and its satellites.
+ * Every change to the satellites is checked holding the lock of the planet only: the limit, the satellites already
+ * orbiting around a planet and the duplicates of a batch. Only if the planet was added to a star, the write lock of
+ * the star is then taken for the short final step that changes the satellites together with the star indexes, the
+ * columns and the running sums, so threads working on different planets only contend on that step
+ */
 public class Planet extends CelestialBody {
-  private static final int MAX_SATELLITES = 5000;
+  static final int MAX_SATELLITES = 5000;
 
-  private ArrayList<Satellite> satellites;
+  private LinkedHashSet<Satellite> satellites;
+  private volatile Star star;
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile StarSystemSnapshot.PlanetSnapshot snapshot;
 
   public Planet(String name, double mass, Position position) {
     super(name, mass, position);
-    satellites = new ArrayList<>();
+    satellites = new LinkedHashSet<>();
   }
 
+  Planet(long ID, String name, double mass, Position position) {
+    super(ID, name, mass, position);
+    satellites = new LinkedHashSet<>();
+  }
+
+  /**
+   * @return a copy of the satellites of this planet, safe to iterate while other threads change them
+   */
   public ArrayList<Satellite> getSatellites() {
+    lock.lock();
+    try {
+      return new ArrayList<>(satellites);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the live set of satellites, callers must hold the lock of this planet or of its star
+   */
+  LinkedHashSet<Satellite> getLiveSatellites() {
     return satellites;
   }
 
-  public void addSatellite(Satellite satellite) throws IllegalStateException {
-    if (satellites.size() >= MAX_SATELLITES)
-      throw new IllegalStateException(
-          AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of satellites reached");
+  ReentrantLock getLock() {
+    return lock;
+  }
+
+  /**Callers must hold the lock of this planet or of its star
+   * @return the immutable view of this planet and its satellites, reused until the satellites change
+   */
+  StarSystemSnapshot.PlanetSnapshot snapshot() {
+    StarSystemSnapshot.PlanetSnapshot snapshot = this.snapshot;
+
+    if (snapshot == null)
+      this.snapshot = snapshot = new StarSystemSnapshot.PlanetSnapshot(this,
+          Collections.unmodifiableList(new ArrayList<>(satellites)));
+
+    return snapshot;
+  }
+
+  void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /**
+   * @return the star this planet orbits around, null if it wasn't added to any star yet
+   */
+  public Star getStar() {
+    return star;
+  }
+
+  void setStar(Star star) {
+    this.star = star;
+  }
+
+  /**Adds the satellite to the satellites of this planet if possible
+   * @param satellite to add
+   * @throws IllegalArgumentException if the satellite already orbits around a planet, this one included
+   * @throws IllegalStateException if there are already MAX_SATELLITES satellites or the journal can't be written
+   */
+  public void addSatellite(Satellite satellite) throws IllegalArgumentException, IllegalStateException {
+    lock.lock();
+    try {
+      checkNotOrbiting(satellite);
+      if (satellites.size() >= MAX_SATELLITES)
+        throw new IllegalStateException(
+            AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of satellites reached");
+
+      // the star can only change while holding the lock of this planet
+      Star star = this.star;
+      if (star == null) {
+        attachSatellite(satellite);
+        return;
+      }
+
+      star.getLock().writeLock().lock();
+      try {
+        star.checkJournal();
+        if (attachSatellite(satellite))
+          star.indexCelestialBody(satellite);
+      } finally {
+        star.getLock().writeLock().unlock();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**Adds all the satellites checking the limit and the positions once for the whole batch. Either all the satellites
+   * are added or none is
+   * @param newSatellites to add to this planet
+   * @throws IllegalArgumentException if a satellite already orbits around another planet or two celestial bodies would
+   *                                  share the same position
+   * @throws IllegalStateException if the satellites would exceed MAX_SATELLITES or the journal can't be written
+   */
+  public void addSatellites(Collection<Satellite> newSatellites)
+      throws IllegalArgumentException, IllegalStateException {
+    LinkedHashSet<Satellite> batch = new LinkedHashSet<>(newSatellites);
 
-    satellites.add(satellite);
+    lock.lock();
+    try {
+      batch.removeAll(satellites);
+      for (Satellite satellite : batch)
+        checkNotOrbiting(satellite);
+      if (satellites.size() + batch.size() > MAX_SATELLITES)
+        throw new IllegalStateException(
+            AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of satellites reached");
+
+      HashSet<Position> batchPositions = new HashSet<>();
+      Star star = this.star;
+      if (star == null) {
+        batchPositions.add(getPosition());
+        for (Satellite satellite : satellites)
+          batchPositions.add(satellite.getPosition());
+        for (Satellite satellite : batch) {
+          if (!batchPositions.add(satellite.getPosition()))
+            throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+                + String.format("\nPosition %s already taken", satellite.getPosition()));
+        }
+
+        for (Satellite satellite : batch)
+          attachSatellite(satellite);
+        return;
+      }
+
+      // the positions are checked against the star indexes, so in the same critical section that updates them
+      star.getLock().writeLock().lock();
+      try {
+        star.checkJournal();
+        for (Satellite satellite : batch)
+          star.checkPositionFree(satellite.getPosition(), batchPositions);
+
+        star.reserveColumns(batch.size());
+        for (Satellite satellite : batch) {
+          attachSatellite(satellite);
+          star.indexCelestialBody(satellite);
+        }
+      } finally {
+        star.getLock().writeLock().unlock();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**Callers must hold the lock of this planet and, if it was added to a star, the write lock of the star, as the
+   * snapshots of the star read the satellites holding its lock only
+   * @param satellite to add to the satellites of this planet
+   * @return false if the satellite was already there
+   */
+  private boolean attachSatellite(Satellite satellite) {
+    if (!satellites.add(satellite))
+      return false;
+
+    satellite.setOrbitingPlanet(this);
+    invalidateSnapshot();
+
+    return true;
+  }
+
+  private static void checkNotOrbiting(Satellite satellite) throws IllegalArgumentException {
+    if (satellite.getOrbitingPlanet() != null)
+      throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+          + String.format("\nThe satellite %s already orbits around a planet", satellite.getName()));
   }
 
   public void removeSatellite(Satellite satellite) {
-    satellites.remove(satellite);
+    lock.lock();
+    try {
+      if (!satellites.contains(satellite))
+        return;
+
+      Star star = this.star;
+      if (star == null) {
+        removeSatelliteLocked(satellite);
+        return;
+      }
+
+      star.getLock().writeLock().lock();
+      try {
+        star.checkJournal();
+        removeSatelliteLocked(satellite);
+      } finally {
+        star.getLock().writeLock().unlock();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**Callers must hold the lock of this planet and, if it was added to a star, the write lock of the star
+   * @param satellite to remove
+   */
+  void removeSatelliteLocked(Satellite satellite) {
+    if (!satellites.remove(satellite))
+      return;
+
+    satellite.setOrbitingPlanet(null);
+    invalidateSnapshot();
+    if (star != null)
+      star.unindexCelestialBody(satellite);
   }
 
   public Satellite searchSatellite(String searchQuery) {
-    Satellite satellite = searchSatelliteByID(searchQuery);
+    lock.lock();
+    try {
+      Satellite satellite = searchSatelliteByID(searchQuery);
 
-    if (satellite != null)
-      return satellite;
+      if (satellite != null)
+        return satellite;
 
-    return searchSatelliteByName(searchQuery);
+      return searchSatelliteByName(searchQuery);
+    } finally {
+      lock.unlock();
+    }
   }
 
   private Satellite searchSatelliteByID(String ID) {
@@ -58,11 +266,6 @@ public class Planet extends CelestialBody {
   }
 
   public boolean doesSatelliteOrbitsAround(Satellite searchedSatellite) {
-    for (Satellite satellite : satellites) {
-      if (satellite.equals(searchedSatellite))
-        return true;
-    }
-
-    return false;
+    return searchedSatellite.getOrbitingPlanet() == this;
   }
 }
@@ -1,8 +1,10 @@
 package plus;
 
 public class Position {
-  private double x;
-  private double y;
+  public static final Position ORIGIN = new Position(0, 0);
+
+  private final double x;
+  private final double y;
 
   public Position(double x, double y) {
     this.x = x;
@@ -26,8 +28,26 @@ public class Position {
   }
 
   public double distance(Position other) {
-    return Math.sqrt(
-        Math.pow(other.x - x, 2) + Math.pow(other.y - y, 2));
+    return distance(x, y, other.x, other.y);
+  }
+
+  /**
+   * @param other position
+   * @return the squared distance from other, cheaper than distance when only comparing distances
+   */
+  public double distanceSq(Position other) {
+    return distanceSq(x, y, other.x, other.y);
+  }
+
+  public static double distance(double x1, double y1, double x2, double y2) {
+    return Math.sqrt(distanceSq(x1, y1, x2, y2));
+  }
+
+  public static double distanceSq(double x1, double y1, double x2, double y2) {
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+
+    return dx * dx + dy * dy;
   }
 
   @Override
@@ -40,6 +60,11 @@ public class Position {
     return x == objPosition.x && y == objPosition.y;
   }
 
+  @Override
+  public int hashCode() {
+    return 31 * Double.hashCode(x == 0.0 ? 0.0 : x) + Double.hashCode(y == 0.0 ? 0.0 : y);
+  }
+
   @Override
   public String toString() {
     return String.format("(%.2f, %.2f)", x, y);
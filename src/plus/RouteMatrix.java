@@ -0,0 +1,255 @@
+package plus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import it.kibo.fp.lib.AnsiColors;
+
+/**
+ * Route lengths between every pair of planets of a star system, with the semantics of Star.calculateRoute: two
+ * different planets are always connected through the star, so the length is the sum of their cached star distances.
+ * The rows are computed in parallel with fork/join, either into an off-heap matrix, split in direct buffers of at most
+ * BLOCK_SIZE doubles, or streamed to a file for systems too large to be kept in memory. The file holds a header (magic
+ * number, format version, number of planets), the numeric IDs of the planets and then the rows, all big endian.
+ * @see Star#calculateRouteLength(CelestialBody, CelestialBody)
+ */
+public class RouteMatrix {
+  public static final int BLOCK_SIZE = 1 << 27;
+  static final int ROWS_PER_TASK = 64;
+
+  private static final int MAGIC = 0x524D5458; // RMTX
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 12;
+
+  private final Planet[] planets;
+  private final HashMap<Planet, Integer> indexes;
+  private final int rowsPerBlock;
+  private final DoubleBuffer[] blocks;
+
+  private RouteMatrix(Planet[] planets) {
+    this.planets = planets;
+    this.indexes = new HashMap<>(planets.length * 2);
+    for (int i = 0; i < planets.length; i++)
+      indexes.put(planets[i], i);
+
+    int size = planets.length;
+    rowsPerBlock = Math.max(1, BLOCK_SIZE / Math.max(1, size));
+    blocks = new DoubleBuffer[(size + rowsPerBlock - 1) / rowsPerBlock];
+    for (int block = 0; block < blocks.length; block++) {
+      int rows = Math.min(rowsPerBlock, size - block * rowsPerBlock);
+      blocks[block] = ByteBuffer.allocateDirect(rows * size * Double.BYTES).asDoubleBuffer();
+    }
+  }
+
+  /**Computes the route lengths between all the planets of a snapshot of the star system
+   * @param star whose planets have to be connected
+   * @return the matrix of the route lengths, rows and columns in the order of the planets of the snapshot
+   */
+  public static RouteMatrix compute(Star star) {
+    List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots = star.snapshot().getPlanets();
+    double[] starDistances = starDistances(planetSnapshots);
+    RouteMatrix matrix = new RouteMatrix(planets(planetSnapshots));
+
+    ForkJoinPool.commonPool().invoke(new RowsTask(starDistances, 0, starDistances.length, (row, values) -> {
+      DoubleBuffer block = matrix.blocks[row / matrix.rowsPerBlock].duplicate();
+      block.position((row % matrix.rowsPerBlock) * values.length);
+      block.put(values);
+    }));
+
+    return matrix;
+  }
+
+  /**Computes the route lengths between all the planets of a snapshot of the star system and streams them to a file,
+   * replacing it if it exists. Only a few rows per thread are kept in memory
+   * @param star whose planets have to be connected
+   * @param path of the file
+   * @throws IOException if the file can't be written
+   */
+  public static void write(Star star, Path path) throws IOException {
+    List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots = star.snapshot().getPlanets();
+    double[] starDistances = starDistances(planetSnapshots);
+    int size = starDistances.length;
+    long rowsOffset = HEADER_SIZE + (long) size * Long.BYTES;
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate((int) rowsOffset);
+      header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(size);
+      for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : planetSnapshots)
+        header.putLong(planetSnapshot.getPlanet().getNumericID());
+      header.flip();
+      writeFully(channel, header, 0);
+
+      ThreadLocal<ByteBuffer> rowBuffers = ThreadLocal
+          .withInitial(() -> ByteBuffer.allocateDirect(size * Double.BYTES));
+      // the first write failure is kept aside and thrown once all the tasks are done, as fork/join may rethrow an
+      // exception thrown by a task wrapped in another one
+      AtomicReference<IOException> failure = new AtomicReference<>();
+      ForkJoinPool.commonPool().invoke(new RowsTask(starDistances, 0, size, (row, values) -> {
+        if (failure.get() != null)
+          return;
+
+        ByteBuffer rowBuffer = rowBuffers.get();
+        rowBuffer.clear();
+        rowBuffer.asDoubleBuffer().put(values);
+
+        try {
+          // positional writes don't move the channel position, so the rows can be written by many threads at once
+          writeFully(channel, rowBuffer, rowsOffset + (long) row * size * Double.BYTES);
+        } catch (IOException e) {
+          failure.compareAndSet(null, e);
+        }
+      }));
+
+      if (failure.get() != null)
+        throw failure.get();
+    }
+  }
+
+  /**Finds for every planet the k planets with the shortest routes from it. As every route passes through the star,
+   * these are the k planets closest to the star except the planet itself, so they are found with one sort
+   * @param star whose planets have to be connected
+   * @param k number of planets to find for every planet
+   * @return for every planet, in the order of the planets of the star, its k nearest planets by route length
+   */
+  public static LinkedHashMap<Planet, List<Planet>> nearestPlanets(Star star, int k) {
+    List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots = star.snapshot().getPlanets();
+    Planet[] planets = planets(planetSnapshots);
+    double[] starDistances = starDistances(planetSnapshots);
+
+    Integer[] byDistance = new Integer[planets.length];
+    for (int i = 0; i < planets.length; i++)
+      byDistance[i] = i;
+    Arrays.sort(byDistance, (first, second) -> Double.compare(starDistances[first], starDistances[second]));
+
+    // k + 1 candidates, so that k are left once the planet itself is skipped
+    int candidates = Math.min(planets.length, Math.max(0, k) + 1);
+    LinkedHashMap<Planet, List<Planet>> nearest = new LinkedHashMap<>(planets.length * 2);
+    for (int i = 0; i < planets.length; i++) {
+      ArrayList<Planet> nearestPlanets = new ArrayList<>(candidates);
+      for (int c = 0; c < candidates && nearestPlanets.size() < k; c++) {
+        if (byDistance[c] != i)
+          nearestPlanets.add(planets[byDistance[c]]);
+      }
+      nearest.put(planets[i], nearestPlanets);
+    }
+
+    return nearest;
+  }
+
+  /**
+   * @return the number of planets, rows and columns of the matrix
+   */
+  public int size() {
+    return planets.length;
+  }
+
+  public Planet getPlanet(int index) {
+    return planets[index];
+  }
+
+  /**
+   * @return the index of the planet in the matrix, -1 if it isn't in the matrix
+   */
+  public int indexOf(Planet planet) {
+    Integer index = indexes.get(planet);
+
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * @return the length of the route from the planet of the row to the planet of the column
+   */
+  public double get(int row, int column) {
+    return blocks[row / rowsPerBlock].get((row % rowsPerBlock) * planets.length + column);
+  }
+
+  /**
+   * @return the length of the route between the two planets
+   * @throws IllegalArgumentException if one of the planets isn't in the matrix
+   */
+  public double get(Planet start, Planet finish) throws IllegalArgumentException {
+    int row = indexOf(start), column = indexOf(finish);
+    if (row < 0 || column < 0)
+      throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+          + "\nOne or both the planets aren't in the route matrix");
+
+    return get(row, column);
+  }
+
+  private static Planet[] planets(List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots) {
+    Planet[] planets = new Planet[planetSnapshots.size()];
+    for (int i = 0; i < planets.length; i++)
+      planets[i] = planetSnapshots.get(i).getPlanet();
+
+    return planets;
+  }
+
+  private static double[] starDistances(List<StarSystemSnapshot.PlanetSnapshot> planetSnapshots) {
+    double[] starDistances = new double[planetSnapshots.size()];
+    for (int i = 0; i < starDistances.length; i++)
+      starDistances[i] = planetSnapshots.get(i).getPlanet().getStarDistance();
+
+    return starDistances;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining())
+      position += channel.write(buffer, position);
+  }
+
+  private interface RowConsumer {
+    void accept(int row, double[] values);
+  }
+
+  /**
+   * Computes a range of rows, splitting it in halves down to ROWS_PER_TASK rows
+   */
+  private static class RowsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] starDistances;
+    private final int from;
+    private final int to;
+    private final RowConsumer consumer;
+
+    RowsTask(double[] starDistances, int from, int to, RowConsumer consumer) {
+      this.starDistances = starDistances;
+      this.from = from;
+      this.to = to;
+      this.consumer = consumer;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > ROWS_PER_TASK) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new RowsTask(starDistances, from, middle, consumer),
+            new RowsTask(starDistances, middle, to, consumer));
+        return;
+      }
+
+      double[] values = new double[starDistances.length];
+      for (int row = from; row < to; row++) {
+        double rowDistance = starDistances[row];
+        for (int column = 0; column < values.length; column++)
+          values[column] = rowDistance + starDistances[column];
+        values[row] = 0;
+
+        consumer.accept(row, values);
+      }
+    }
+  }
+}
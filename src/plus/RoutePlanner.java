@@ -0,0 +1,35 @@
+package plus;
+
+import java.util.LinkedList;
+
+/**
+ * Strategy computing the route between two celestial bodies of a star system
+ * @see Star#calculateRoute(CelestialBody, CelestialBody)
+ * @see ShortestRoutePlanner
+ */
+public interface RoutePlanner {
+  /**
+   * @param start celestial body where the route starts
+   * @param finish celestial body to reach
+   * @return the ordered celestial bodies to pass through to reach finish from start, start and finish included
+   */
+  LinkedList<CelestialBody> calculateRoute(CelestialBody start, CelestialBody finish);
+
+  /**
+   * @param start celestial body where the route starts
+   * @param finish celestial body to reach
+   * @return the length of the route from start to finish, by default the sum of the distances of its hops
+   */
+  default double calculateRouteLength(CelestialBody start, CelestialBody finish) {
+    double length = 0;
+    CelestialBody previous = null;
+
+    for (CelestialBody current : calculateRoute(start, finish)) {
+      if (previous != null)
+        length += previous.getPosition().distance(current.getPosition());
+      previous = current;
+    }
+
+    return length;
+  }
+}
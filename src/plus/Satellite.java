@@ -4,13 +4,32 @@ public class Satellite extends CelestialBody {
   private Position relativePosition;
   private double minStarDistance;
   private double maxStarDistance;
+  private volatile Planet orbitingPlanet;
 
   public Satellite(String name, double mass, Position position, boolean relativePositioning, Planet orbitingPlanet) {
     super(name, mass, relativePositioning ? position.add(orbitingPlanet.getPosition()) : position);
+    this.relativePosition = relativePositioning ? position : position.subtract(orbitingPlanet.getPosition());
+    calculateStarDistances(orbitingPlanet);
+  }
+
+  /**Restores a satellite with a known ID
+   * @param ID of the satellite
+   * @param name of the satellite
+   * @param mass of the satellite
+   * @param position absolute position of the satellite
+   * @param orbitingPlanet planet the satellite orbits around
+   */
+  Satellite(long ID, String name, double mass, Position position, Planet orbitingPlanet) {
+    super(ID, name, mass, position);
     this.relativePosition = position.subtract(orbitingPlanet.getPosition());
-    double starPlanetDistance = orbitingPlanet.getPosition().distance(new Position(0, 0));
-    minStarDistance = starPlanetDistance - relativePosition.distance(new Position(0, 0));
-    maxStarDistance = starPlanetDistance + relativePosition.distance(new Position(0, 0));
+    calculateStarDistances(orbitingPlanet);
+  }
+
+  private void calculateStarDistances(Planet orbitingPlanet) {
+    double starPlanetDistance = orbitingPlanet.getPosition().distance(Position.ORIGIN);
+    double orbitRadius = relativePosition.distance(Position.ORIGIN);
+    minStarDistance = starPlanetDistance - orbitRadius;
+    maxStarDistance = starPlanetDistance + orbitRadius;
   }
 
   public Position getRelativePosition() {
@@ -25,6 +44,17 @@ public class Satellite extends CelestialBody {
     return maxStarDistance;
   }
 
+  /**
+   * @return the planet this satellite was added to, null if it doesn't orbit around any planet
+   */
+  public Planet getOrbitingPlanet() {
+    return orbitingPlanet;
+  }
+
+  void setOrbitingPlanet(Planet orbitingPlanet) {
+    this.orbitingPlanet = orbitingPlanet;
+  }
+
   public String toStringRelative() {
     return String.format("{ID: %s, Name: %s, Mass: %.2f, RelativePosition: %s}", getID(), getName(), getMass(),
         relativePosition);
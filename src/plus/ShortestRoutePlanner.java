@@ -0,0 +1,359 @@
+package plus;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import it.kibo.fp.lib.AnsiColors;
+
+/**
+ * Shortest routes over a travel graph of the star system, found with A* using Position.distance as the weight of
+ * every hop and the straight distance to the finish as heuristic, which never overestimates, so routes are optimal.
+ * The travel graph always has the hops of the hierarchy (satellite to planet, planet to star), so a route always
+ * exists, plus a direct hop between any two celestial bodies closer than the maximum hop range. With a range of 0 the
+ * routes are the ones of Star.calculateRoute.
+ * <p>
+ * The graph is built in primitive arrays from a snapshot of the system and rebuilt when the system changes: bodies are
+ * sorted by the cell of a grid as wide as the hop range, so the direct hops of a body are found in the 3x3 cells around
+ * it without storing any edge. The open set is an indexed binary heap over the body indexes, and the last
+ * CACHE_CAPACITY routes are cached until the system changes
+ * @see RoutePlanner
+ */
+public class ShortestRoutePlanner implements RoutePlanner {
+  public static final int CACHE_CAPACITY = 4096;
+
+  private final Star star;
+  private final double maxHopRange;
+  private final double maxHopRangeSq;
+
+  private long version = -1;
+  private CelestialBody[] bodies;
+  private HashMap<CelestialBody, Integer> indexes;
+  private double[] x;
+  private double[] y;
+  private int[] parents;
+  private int[] childrenStart;
+  private int[] children;
+  // bodies sorted by grid cell, with the sorted keys of the cells and where every cell starts
+  private int[] cellBodies;
+  private long[] cellKeys;
+  private int[] cellStart;
+
+  private double[] costs;
+  private int[] previous;
+  private int[] visits;
+  private int search;
+  private IndexedMinHeap open;
+
+  private final LinkedHashMap<Long, int[]> cache = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+      return size() > CACHE_CAPACITY;
+    }
+  };
+
+  /**
+   * @param star whose system has to be traveled
+   * @param maxHopRange maximum distance of a direct hop between two celestial bodies, 0 for the hierarchy hops only
+   * @throws IllegalArgumentException if the range is negative
+   */
+  public ShortestRoutePlanner(Star star, double maxHopRange) throws IllegalArgumentException {
+    if (!(maxHopRange >= 0))
+      throw new IllegalArgumentException(
+          AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nThe hop range can't be negative");
+
+    this.star = star;
+    this.maxHopRange = maxHopRange;
+    this.maxHopRangeSq = maxHopRange * maxHopRange;
+  }
+
+  public double getMaxHopRange() {
+    return maxHopRange;
+  }
+
+  /**
+   * @throws IllegalArgumentException if start or finish don't belong to the star system
+   */
+  @Override
+  public synchronized LinkedList<CelestialBody> calculateRoute(CelestialBody start, CelestialBody finish)
+      throws IllegalArgumentException {
+    if (star.getVersion() != version)
+      build(star.snapshot());
+
+    Integer startIndex = indexes.get(start), finishIndex = indexes.get(finish);
+    if (startIndex == null || finishIndex == null)
+      throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+          + "\nOne or both the celestial bodies don't belong to the star system");
+
+    long key = (long) startIndex * bodies.length + finishIndex;
+    int[] route = cache.get(key);
+    if (route == null) {
+      route = findRoute(startIndex, finishIndex);
+      cache.put(key, route);
+    }
+
+    LinkedList<CelestialBody> celestialBodies = new LinkedList<>();
+    for (int body : route)
+      celestialBodies.add(bodies[body]);
+
+    return celestialBodies;
+  }
+
+  private void build(StarSystemSnapshot snapshot) {
+    int count = 1;
+    for (StarSystemSnapshot.PlanetSnapshot planet : snapshot.getPlanets())
+      count += 1 + planet.getSatellites().size();
+
+    bodies = new CelestialBody[count];
+    indexes = new HashMap<>(count * 2);
+    x = new double[count];
+    y = new double[count];
+    parents = new int[count];
+    childrenStart = new int[count + 1];
+    children = new int[count - 1];
+
+    // bodies in hierarchy order, so the children of every body are contiguous: the planets first, then the
+    // satellites planet by planet
+    addBody(0, snapshot.getStar(), -1);
+    int i = 1;
+    for (StarSystemSnapshot.PlanetSnapshot planet : snapshot.getPlanets())
+      addBody(i++, planet.getPlanet(), 0);
+    int planet = 1;
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+      List<Satellite> satellites = planetSnapshot.getSatellites();
+      for (int s = 0; s < satellites.size(); s++)
+        addBody(i++, satellites.get(s), planet);
+      planet++;
+    }
+
+    for (i = 1; i < count; i++)
+      childrenStart[parents[i] + 1]++;
+    for (i = 1; i <= count; i++)
+      childrenStart[i] += childrenStart[i - 1];
+    int[] next = Arrays.copyOf(childrenStart, count);
+    for (i = 1; i < count; i++)
+      children[next[parents[i]]++] = i;
+
+    buildGrid(count);
+
+    costs = new double[count];
+    previous = new int[count];
+    visits = new int[count];
+    search = 0;
+    open = new IndexedMinHeap(count);
+    cache.clear();
+    version = snapshot.getVersion();
+  }
+
+  private void addBody(int i, CelestialBody body, int parent) {
+    bodies[i] = body;
+    indexes.put(body, i);
+    x[i] = body.getPosition().getX();
+    y[i] = body.getPosition().getY();
+    parents[i] = parent;
+  }
+
+  private void buildGrid(int count) {
+    if (maxHopRange == 0) {
+      cellBodies = new int[0];
+      cellKeys = new long[0];
+      cellStart = new int[] { 0 };
+      return;
+    }
+
+    long[] bodyCells = new long[count];
+    for (int i = 0; i < count; i++)
+      bodyCells[i] = cellKey(cell(x[i]), cell(y[i]));
+
+    long[] sortedCells = bodyCells.clone();
+    Arrays.sort(sortedCells);
+    int cells = 0;
+    for (int k = 0; k < count; k++) {
+      if (k == 0 || sortedCells[k] != sortedCells[k - 1])
+        sortedCells[cells++] = sortedCells[k];
+    }
+    cellKeys = Arrays.copyOf(sortedCells, cells);
+
+    // counting sort of the bodies by cell
+    int[] bodyCellIndexes = new int[count];
+    cellStart = new int[cells + 1];
+    for (int i = 0; i < count; i++) {
+      bodyCellIndexes[i] = Arrays.binarySearch(cellKeys, bodyCells[i]);
+      cellStart[bodyCellIndexes[i] + 1]++;
+    }
+    for (int c = 1; c <= cells; c++)
+      cellStart[c] += cellStart[c - 1];
+
+    cellBodies = new int[count];
+    int[] next = Arrays.copyOf(cellStart, cells);
+    for (int i = 0; i < count; i++)
+      cellBodies[next[bodyCellIndexes[i]]++] = i;
+  }
+
+  private long cell(double coordinate) {
+    return (long) Math.floor(coordinate / maxHopRange);
+  }
+
+  private static long cellKey(long cellX, long cellY) {
+    return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+  }
+
+  /**
+   * @return the indexes of the bodies of the shortest route from start to finish
+   */
+  private int[] findRoute(int start, int finish) {
+    search++;
+    visit(start, 0, -1);
+    open.insert(start, heuristic(start, finish));
+
+    while (!open.isEmpty()) {
+      int current = open.poll();
+      if (current == finish)
+        break;
+
+      if (parents[current] >= 0)
+        relax(current, parents[current], finish);
+      for (int c = childrenStart[current]; c < childrenStart[current + 1]; c++)
+        relax(current, children[c], finish);
+
+      if (maxHopRange > 0) {
+        long cellX = cell(x[current]), cellY = cell(y[current]);
+        for (long dx = -1; dx <= 1; dx++) {
+          for (long dy = -1; dy <= 1; dy++) {
+            int c = Arrays.binarySearch(cellKeys, cellKey(cellX + dx, cellY + dy));
+            if (c < 0)
+              continue;
+
+            for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+              int neighbour = cellBodies[k];
+              double hx = x[neighbour] - x[current], hy = y[neighbour] - y[current];
+              if (neighbour != current && hx * hx + hy * hy <= maxHopRangeSq)
+                relax(current, neighbour, finish);
+            }
+          }
+        }
+      }
+    }
+    open.clear();
+
+    int length = 0;
+    for (int body = finish; body >= 0; body = previous[body])
+      length++;
+    int[] route = new int[length];
+    for (int body = finish; body >= 0; body = previous[body])
+      route[--length] = body;
+
+    return route;
+  }
+
+  private void relax(int from, int to, int finish) {
+    double cost = costs[from] + Position.distance(x[from], y[from], x[to], y[to]);
+    if (visits[to] == search && cost >= costs[to])
+      return;
+
+    visit(to, cost, from);
+    open.insertOrDecrease(to, cost + heuristic(to, finish));
+  }
+
+  private void visit(int body, double cost, int previousBody) {
+    visits[body] = search;
+    costs[body] = cost;
+    previous[body] = previousBody;
+  }
+
+  private double heuristic(int body, int finish) {
+    return Position.distance(x[body], y[body], x[finish], y[finish]);
+  }
+
+  /**
+   * Binary min heap of body indexes, storing where every index is so that its priority can be decreased in place
+   */
+  private static class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] positions;
+    private final double[] priorities;
+    private int size;
+
+    IndexedMinHeap(int capacity) {
+      heap = new int[capacity];
+      positions = new int[capacity];
+      priorities = new double[capacity];
+      Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void insert(int index, double priority) {
+      heap[size] = index;
+      positions[index] = size;
+      priorities[index] = priority;
+      siftUp(size++);
+    }
+
+    void insertOrDecrease(int index, double priority) {
+      if (positions[index] < 0) {
+        insert(index, priority);
+      } else if (priority < priorities[index]) {
+        priorities[index] = priority;
+        siftUp(positions[index]);
+      }
+    }
+
+    int poll() {
+      int top = heap[0];
+      positions[top] = -1;
+      if (--size > 0) {
+        heap[0] = heap[size];
+        positions[heap[0]] = 0;
+        siftDown(0);
+      }
+
+      return top;
+    }
+
+    void clear() {
+      for (int i = 0; i < size; i++)
+        positions[heap[i]] = -1;
+      size = 0;
+    }
+
+    private void siftUp(int position) {
+      int index = heap[position];
+      while (position > 0) {
+        int parent = (position - 1) >>> 1;
+        if (priorities[heap[parent]] <= priorities[index])
+          break;
+
+        heap[position] = heap[parent];
+        positions[heap[position]] = position;
+        position = parent;
+      }
+      heap[position] = index;
+      positions[index] = position;
+    }
+
+    private void siftDown(int position) {
+      int index = heap[position];
+      while (true) {
+        int child = 2 * position + 1;
+        if (child >= size)
+          break;
+        if (child + 1 < size && priorities[heap[child + 1]] < priorities[heap[child]])
+          child++;
+        if (priorities[index] <= priorities[heap[child]])
+          break;
+
+        heap[position] = heap[child];
+        positions[heap[position]] = position;
+        position = child;
+      }
+      heap[position] = index;
+      positions[index] = position;
+    }
+  }
+}
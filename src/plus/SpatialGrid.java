@@ -0,0 +1,120 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A uniform grid over the positions of the celestial bodies.
+ * Each body is stored in the square cell containing its position, so occupancy checks only look at one cell and
+ * radius queries only at the cells overlapping the query circle.
+ */
+public class SpatialGrid {
+  public static final double DEFAULT_CELL_SIZE = 10;
+
+  private final double cellSize;
+  private HashMap<Long, ArrayList<CelestialBody>> cells;
+
+  public SpatialGrid() {
+    this(DEFAULT_CELL_SIZE);
+  }
+
+  /**
+   * @param cellSize side of the square cells
+   * @throws IllegalArgumentException if the cell size isn't a positive number
+   */
+  public SpatialGrid(double cellSize) throws IllegalArgumentException {
+    if (!(cellSize > 0))
+      throw new IllegalArgumentException("The cell size must be positive");
+
+    this.cellSize = cellSize;
+    cells = new HashMap<>();
+  }
+
+  public void add(CelestialBody celestialBody) {
+    cells.computeIfAbsent(cellKey(celestialBody.getPosition()), key -> new ArrayList<>(1)).add(celestialBody);
+  }
+
+  public void remove(CelestialBody celestialBody) {
+    Long key = cellKey(celestialBody.getPosition());
+    ArrayList<CelestialBody> cell = cells.get(key);
+    if (cell == null)
+      return;
+
+    cell.remove(celestialBody);
+    if (cell.isEmpty())
+      cells.remove(key);
+  }
+
+  /**
+   * @param position to check
+   * @return the first celestial body found at exactly that position, null if the position is free
+   */
+  public CelestialBody searchAt(Position position) {
+    ArrayList<CelestialBody> cell = cells.get(cellKey(position));
+    if (cell == null)
+      return null;
+
+    for (CelestialBody celestialBody : cell) {
+      if (celestialBody.getPosition().equals(position))
+        return celestialBody;
+    }
+
+    return null;
+  }
+
+  /**
+   * @param center of the search
+   * @param radius maximum distance from center, inclusive
+   * @return the celestial bodies whose distance from center is at most radius
+   */
+  public ArrayList<CelestialBody> searchWithin(Position center, double radius) {
+    ArrayList<CelestialBody> found = new ArrayList<>();
+    if (radius < 0)
+      return found;
+
+    long minCellX = cellCoordinate(center.getX() - radius);
+    long maxCellX = cellCoordinate(center.getX() + radius);
+    long minCellY = cellCoordinate(center.getY() - radius);
+    long maxCellY = cellCoordinate(center.getY() + radius);
+
+    // with a radius much larger than the cells it's cheaper to look at the occupied cells only
+    if ((double) (maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > cells.size()) {
+      for (ArrayList<CelestialBody> cell : cells.values())
+        addWithin(cell, center, radius, found);
+
+      return found;
+    }
+
+    for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+      for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+        ArrayList<CelestialBody> cell = cells.get(cellKey(cellX, cellY));
+        if (cell != null)
+          addWithin(cell, center, radius, found);
+      }
+    }
+
+    return found;
+  }
+
+  private static void addWithin(ArrayList<CelestialBody> cell, Position center, double radius,
+      ArrayList<CelestialBody> found) {
+    for (CelestialBody celestialBody : cell) {
+      if (celestialBody.getPosition().distanceSq(center) <= radius * radius)
+        found.add(celestialBody);
+    }
+  }
+
+  private long cellCoordinate(double coordinate) {
+    double cell = Math.floor(coordinate / cellSize);
+
+    return (long) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cell));
+  }
+
+  private Long cellKey(Position position) {
+    return cellKey(cellCoordinate(position.getX()), cellCoordinate(position.getY()));
+  }
+
+  private static Long cellKey(long cellX, long cellY) {
+    return (cellX << 32) | (cellY & 0xFFFFFFFFL);
+  }
+}
@@ -1,43 +1,484 @@
 package plus;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import it.kibo.fp.lib.AnsiColors;
 /**
- * A class rapresantation of a star celestial body
+ * A class rapresantation of a star celestial body.
+ * The star system can be shared between threads: mutations take the write lock of the star (after the lock of the
+ * planet involved, see Planet) while searches and queries take the read lock, so many readers run together and
+ * writers see consistent indexes and limits
  * @see CelestialBody
  */
-public class Star extends CelestialBody {
-  private static final int MAX_PLANETS = 26000;
-
-  private ArrayList<Planet> planets;
+public class Star extends CelestialBody implements RoutePlanner {
+  static final int MAX_PLANETS = 26000;
+  private static final int MUTATIONS_BETWEEN_RESUMS = 10000;
+
+  private LinkedHashSet<Planet> planets;
+  private HashMap<String, CelestialBody> celestialBodiesByID;
+  private HashMap<String, LinkedHashSet<CelestialBody>> celestialBodiesByName;
+  private HashMap<String, LinkedHashSet<CelestialBody>> celestialBodiesByLowerCaseName;
+  private SpatialGrid spatialGrid;
+  // null unless the columnar storage is enabled
+  private CelestialBodyColumns columns;
+  // compensated, so a large mass added and then removed doesn't wipe out the smaller ones
+  private CenterOfMassTask.Sums runningSums = new CenterOfMassTask.Sums();
+  private int mutationsSinceResum;
+  private long version;
+  private volatile StarSystemSnapshot snapshot;
+  private StarSystemJournal journal;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
   public Star(String name, double mass, Position position) {
     super(name, mass, position);
-    planets = new ArrayList<>();
+    initialize();
+  }
+
+  Star(long ID, String name, double mass, Position position) {
+    super(ID, name, mass, position);
+    initialize();
+  }
+
+  // the constructors differ only in how the ID is assigned, so they share the rest
+  private void initialize() {
+    planets = new LinkedHashSet<>();
+    celestialBodiesByID = new HashMap<>();
+    celestialBodiesByName = new HashMap<>();
+    celestialBodiesByLowerCaseName = new HashMap<>();
+    spatialGrid = new SpatialGrid();
+
+    indexCelestialBody(this);
   }
 
+  /**
+   * @return a copy of the planets of this star's system, safe to iterate while other threads change the system
+   */
   public ArrayList<Planet> getPlanets() {
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(planets);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the live set of planets, callers must hold the lock of this star
+   */
+  LinkedHashSet<Planet> getLivePlanets() {
     return planets;
   }
 
+  ReentrantReadWriteLock getLock() {
+    return lock;
+  }
+
+  /**Callers must hold the write lock of this star
+   * @param journal where to log the mutations of this star's system, null to stop logging them
+   */
+  void setJournal(StarSystemJournal journal) {
+    this.journal = journal;
+  }
+
   /**Adds the planet to the list of planets of the solar system if possible
    * @param planet to add to the system
-   * @throws IllegalStateException if there are already MAX_PLANETS planets in the system
+   * @throws IllegalArgumentException if the planet already belongs to a star, this one included
+   * @throws IllegalStateException if there are already MAX_PLANETS planets in the system or the journal can't be
+   *                               written
+   */
+  public void addPlanet(Planet planet) throws IllegalArgumentException, IllegalStateException {
+    planet.getLock().lock();
+    lock.writeLock().lock();
+    try {
+      checkJournal();
+      if (planet.getStar() != null)
+        throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+            + String.format("\nThe planet %s already belongs to a star", planet.getName()));
+      if (planets.size() >= MAX_PLANETS)
+        throw new IllegalStateException(
+            AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of planets reached");
+
+      planets.add(planet);
+      planet.setStar(this);
+
+      indexCelestialBody(planet);
+      for (Satellite satellite : planet.getLiveSatellites())
+        indexCelestialBody(satellite);
+    } finally {
+      lock.writeLock().unlock();
+      planet.getLock().unlock();
+    }
+  }
+
+  /**Adds all the planets, with their satellites, to the solar system checking the limit and the positions once for
+   * the whole batch. Either all the planets are added or none is
+   * @param newPlanets to add to the system
+   * @throws IllegalArgumentException if a planet already belongs to a star or two celestial bodies would share the
+   *                                  same position
+   * @throws IllegalStateException if the planets would exceed MAX_PLANETS or the journal can't be written
    */
-  public void addPlanet(Planet planet) throws IllegalStateException {
-    if (planets.size() >= MAX_PLANETS)
-      throw new IllegalStateException(
-          AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of planets reached");
+  public void addPlanets(Collection<Planet> newPlanets) throws IllegalArgumentException, IllegalStateException {
+    LinkedHashSet<Planet> batch = new LinkedHashSet<>(newPlanets);
+    ArrayList<Planet> lockedPlanets = lockPlanets(batch);
+    lock.writeLock().lock();
+    try {
+      checkJournal();
+      if (planets.size() + batch.size() > MAX_PLANETS)
+        throw new IllegalStateException(
+            AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET + "\nMaximum number of planets reached");
+
+      HashSet<Position> batchPositions = new HashSet<>();
+      int celestialBodies = 0;
+      for (Planet planet : batch) {
+        if (planet.getStar() != null)
+          throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+              + String.format("\nThe planet %s already belongs to a star", planet.getName()));
+
+        checkPositionFree(planet.getPosition(), batchPositions);
+        for (Satellite satellite : planet.getLiveSatellites())
+          checkPositionFree(satellite.getPosition(), batchPositions);
+
+        celestialBodies += 1 + planet.getLiveSatellites().size();
+      }
+
+      reserveColumns(celestialBodies);
+      for (Planet planet : batch) {
+        planets.add(planet);
+        planet.setStar(this);
 
-    planets.add(planet);
+        indexCelestialBody(planet);
+        for (Satellite satellite : planet.getLiveSatellites())
+          indexCelestialBody(satellite);
+      }
+    } finally {
+      lock.writeLock().unlock();
+      unlockPlanets(lockedPlanets);
+    }
   }
 
   public void removePlanet(Planet planet) {
-    planet.getSatellites().clear();
+    planet.getLock().lock();
+    lock.writeLock().lock();
+    try {
+      checkJournal();
+      removePlanetLocked(planet);
+    } finally {
+      lock.writeLock().unlock();
+      planet.getLock().unlock();
+    }
+  }
+
+  /**Removes every planet and satellite of the solar system whose ID is in the collection, the satellites of the
+   * removed planets included. IDs not found are ignored
+   * @param IDs of the celestial bodies to remove
+   */
+  public void removeAll(Collection<String> IDs) {
+    LinkedHashSet<Planet> affectedPlanets = new LinkedHashSet<>();
+    lock.readLock().lock();
+    try {
+      for (String ID : IDs) {
+        CelestialBody celestialBody = celestialBodiesByID.get(ID);
+
+        if (celestialBody instanceof Planet)
+          affectedPlanets.add((Planet) celestialBody);
+        else if (celestialBody instanceof Satellite && getOrbitingPlanet((Satellite) celestialBody) != null)
+          affectedPlanets.add(((Satellite) celestialBody).getOrbitingPlanet());
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    ArrayList<Planet> lockedPlanets = lockPlanets(affectedPlanets);
+    lock.writeLock().lock();
+    try {
+      checkJournal();
+      for (String ID : IDs) {
+        CelestialBody celestialBody = celestialBodiesByID.get(ID);
+
+        // bodies moved by other threads since the lookup aren't locked, so they are left alone
+        if (celestialBody instanceof Planet && affectedPlanets.contains(celestialBody)) {
+          removePlanetLocked((Planet) celestialBody);
+        } else if (celestialBody instanceof Satellite) {
+          Planet orbitingPlanet = getOrbitingPlanet((Satellite) celestialBody);
+          if (orbitingPlanet != null && affectedPlanets.contains(orbitingPlanet))
+            orbitingPlanet.removeSatelliteLocked((Satellite) celestialBody);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+      unlockPlanets(lockedPlanets);
+    }
+  }
+
+  /**Callers must hold the lock of the planet and the write lock of this star
+   * @param planet to remove, together with its satellites
+   */
+  private void removePlanetLocked(Planet planet) {
+    if (planet.getStar() != this)
+      return;
+
+    for (Satellite satellite : planet.getLiveSatellites()) {
+      unindexCelestialBody(satellite);
+      satellite.setOrbitingPlanet(null);
+    }
+    planet.getLiveSatellites().clear();
+    planet.invalidateSnapshot();
 
     planets.remove(planet);
+    unindexCelestialBody(planet);
+    planet.setStar(null);
+  }
+
+  /**Locks the planets in ascending ID order, so that two batches can't wait for each other
+   * @param planetsToLock planets to lock
+   * @return the locked planets, to pass to unlockPlanets
+   */
+  private static ArrayList<Planet> lockPlanets(Collection<Planet> planetsToLock) {
+    ArrayList<Planet> lockedPlanets = new ArrayList<>(planetsToLock);
+    lockedPlanets.sort(Comparator.comparingLong(Planet::getNumericID));
+
+    for (Planet planet : lockedPlanets)
+      planet.getLock().lock();
+
+    return lockedPlanets;
+  }
+
+  private static void unlockPlanets(ArrayList<Planet> lockedPlanets) {
+    for (int i = lockedPlanets.size() - 1; i >= 0; i--)
+      lockedPlanets.get(i).getLock().unlock();
+  }
+
+  /**Checks that no celestial body of this star's system nor of the batch being added is at the position, callers must
+   * hold the lock of this star
+   * @param position to check
+   * @param batchPositions positions already taken by the batch, the position is added to them
+   * @throws IllegalArgumentException if the position is already taken
+   */
+  void checkPositionFree(Position position, HashSet<Position> batchPositions) throws IllegalArgumentException {
+    if (spatialGrid.searchAt(position) != null || !batchPositions.add(position))
+      throw new IllegalArgumentException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+          + String.format("\nPosition %s already taken", position));
+  }
+
+  /**Callers must hold the write lock of this star, before making any mutation
+   * @throws IllegalStateException if the journal of this star's system can't log the mutations anymore
+   */
+  void checkJournal() throws IllegalStateException {
+    if (journal != null)
+      journal.checkWritable();
+  }
+
+  /**Adds the celestial body to the ID, name and position indexes and to the columns of this star's system,
+   * callers must hold the write lock of this star
+   * @param celestialBody to index
+   */
+  void indexCelestialBody(CelestialBody celestialBody) {
+    celestialBodiesByID.put(celestialBody.getID(), celestialBody);
+    celestialBodiesByName.computeIfAbsent(celestialBody.getName(), key -> new LinkedHashSet<>()).add(celestialBody);
+    celestialBodiesByLowerCaseName
+        .computeIfAbsent(celestialBody.getName().toLowerCase(Locale.ROOT), key -> new LinkedHashSet<>())
+        .add(celestialBody);
+    spatialGrid.add(celestialBody);
+    if (columns != null)
+      columns.add(celestialBody);
+
+    Planet orbitingPlanet = celestialBody instanceof Satellite ? ((Satellite) celestialBody).getOrbitingPlanet() : null;
+    // positions never change, so the hierarchy distances only need to be set when joining the system: planets are
+    // always indexed before their satellites
+    if (orbitingPlanet != null) {
+      double parentDistance = celestialBody.getPosition().distance(orbitingPlanet.getPosition());
+      celestialBody.setHierarchyDistances(parentDistance, parentDistance + orbitingPlanet.getStarDistance());
+    } else if (celestialBody != this) {
+      double starDistance = celestialBody.getPosition().distance(getPosition());
+      celestialBody.setHierarchyDistances(starDistance, starDistance);
+    }
+
+    updateRunningSums(celestialBody, 1);
+    version++;
+
+    if (journal != null)
+      journal.append(true, celestialBody);
+  }
+
+  /**Removes the celestial body from the ID, name and position indexes and from the columns of this star's system,
+   * callers must hold the write lock of this star
+   * @param celestialBody to remove from the indexes
+   */
+  void unindexCelestialBody(CelestialBody celestialBody) {
+    celestialBodiesByID.remove(celestialBody.getID());
+    unindexName(celestialBodiesByName, celestialBody.getName(), celestialBody);
+    unindexName(celestialBodiesByLowerCaseName, celestialBody.getName().toLowerCase(Locale.ROOT), celestialBody);
+    spatialGrid.remove(celestialBody);
+    if (columns != null)
+      columns.remove(celestialBody);
+
+    updateRunningSums(celestialBody, -1);
+    version++;
+
+    if (journal != null)
+      journal.append(false, celestialBody);
+  }
+
+  /**Adds or subtracts the celestial body to the running sums used by the center of mass
+   * @param celestialBody added or removed
+   * @param sign 1 if the body was added, -1 if it was removed
+   */
+  private void updateRunningSums(CelestialBody celestialBody, int sign) {
+    if (sign > 0)
+      runningSums.add(celestialBody.getMass(), celestialBody.getPosition().getX(), celestialBody.getPosition().getY());
+    else
+      runningSums.subtract(celestialBody.getMass(), celestialBody.getPosition().getX(),
+          celestialBody.getPosition().getY());
+
+    mutationsSinceResum++;
+  }
+
+  /**
+   * Recomputes the running sums from the columns, or from the celestial bodies if they are disabled, discarding the
+   * rounding errors accumulated by the updates
+   */
+  private void resum() {
+    if (columns != null) {
+      runningSums = ForkJoinPool.commonPool().invoke(new CenterOfMassTask(columns, 0, columns.size()));
+    } else {
+      CelestialBody[] celestialBodies = new CelestialBody[countCelestialBodies()];
+      int i = 0;
+      celestialBodies[i++] = this;
+      for (Planet planet : planets) {
+        celestialBodies[i++] = planet;
+        for (Satellite satellite : planet.getLiveSatellites())
+          celestialBodies[i++] = satellite;
+      }
+      runningSums = ForkJoinPool.commonPool().invoke(new CenterOfMassTask(celestialBodies, 0, i));
+    }
+
+    mutationsSinceResum = 0;
+  }
+
+  /**Callers must hold the lock of this star
+   * @return the number of celestial bodies in this star's system, this star included
+   */
+  private int countCelestialBodies() {
+    int count = 1;
+    for (Planet planet : planets)
+      count += 1 + planet.getLiveSatellites().size();
+
+    return count;
+  }
+
+  /**
+   * @return the number of mutations this star's system went through
+   */
+  public long getVersion() {
+    lock.readLock().lock();
+    try {
+      return version;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**Takes an immutable view of this star's system at the current version. The same snapshot is returned until the
+   * system changes, and the satellite lists of the planets that didn't change are shared with the previous one
+   * @return the snapshot of this star's system
+   */
+  public StarSystemSnapshot snapshot() {
+    lock.readLock().lock();
+    try {
+      StarSystemSnapshot snapshot = this.snapshot;
+      if (snapshot != null && snapshot.getVersion() == version)
+        return snapshot;
+
+      ArrayList<StarSystemSnapshot.PlanetSnapshot> planetSnapshots = new ArrayList<>(planets.size());
+      for (Planet planet : planets)
+        planetSnapshots.add(planet.snapshot());
+
+      snapshot = new StarSystemSnapshot(version, this, Collections.unmodifiableList(planetSnapshots),
+          runningSums.getMass(), runningSums.getWeightedX(), runningSums.getWeightedY());
+      this.snapshot = snapshot;
+
+      return snapshot;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**Enables or disables the columnar storage of the numeric data of this star's system. It is disabled by default:
+   * the columns are a copy kept next to the celestial bodies, so they add memory (see CelestialBodyColumns) in
+   * exchange for the scans of the center of mass running over contiguous arrays
+   * @param columnar true to fill the columns with every celestial body of the system, false to drop them
+   */
+  public void setColumnar(boolean columnar) {
+    lock.writeLock().lock();
+    try {
+      if (columnar == (columns != null))
+        return;
+
+      if (!columnar) {
+        for (int slot = 0; slot < columns.size(); slot++)
+          columns.getCelestialBody(slot).setSlot(-1);
+        columns = null;
+        return;
+      }
+
+      columns = new CelestialBodyColumns();
+      columns.ensureCapacity(countCelestialBodies());
+      columns.add(this);
+      for (Planet planet : planets) {
+        columns.add(planet);
+        for (Satellite satellite : planet.getLiveSatellites())
+          columns.add(satellite);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public boolean isColumnar() {
+    lock.readLock().lock();
+    try {
+      return columns != null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the columnar storage of every celestial body in this star's system, this star included, null if it is
+   *         disabled. Callers sharing the system between threads must hold the lock of this star while reading it
+   */
+  CelestialBodyColumns getColumns() {
+    return columns;
+  }
+
+  /**Makes room in the columns, if enabled, for the celestial bodies about to be added. Callers must hold the write
+   * lock of this star
+   * @param celestialBodies number of celestial bodies about to be added
+   */
+  void reserveColumns(int celestialBodies) {
+    if (columns != null)
+      columns.ensureCapacity(columns.size() + celestialBodies);
+  }
+
+  private static void unindexName(HashMap<String, LinkedHashSet<CelestialBody>> index, String key,
+      CelestialBody celestialBody) {
+    LinkedHashSet<CelestialBody> celestialBodies = index.get(key);
+    if (celestialBodies == null)
+      return;
+
+    celestialBodies.remove(celestialBody);
+    if (celestialBodies.isEmpty())
+      index.remove(key);
   }
 
   /**
@@ -45,12 +486,17 @@ public class Star extends CelestialBody {
    * @return
    */
   public Planet searchPlanet(String searchQuery) {
-    Planet planet = searchPlanetByID(searchQuery);
+    lock.readLock().lock();
+    try {
+      Planet planet = searchPlanetByID(searchQuery);
 
-    if (planet != null)
-      return planet;
+      if (planet != null)
+        return planet;
 
-    return searchPlanetByName(searchQuery);
+      return searchPlanetByName(searchQuery);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -58,12 +504,9 @@ public class Star extends CelestialBody {
    * @return the planet with that ID or null if not found
    */
   private Planet searchPlanetByID(String ID) {
-    for (Planet planet : planets) {
-      if (planet.getID().equals(ID))
-        return planet;
-    }
+    CelestialBody celestialBody = celestialBodiesByID.get(ID);
 
-    return null;
+    return celestialBody instanceof Planet ? (Planet) celestialBody : null;
   }
 
   /**
@@ -71,187 +514,238 @@ public class Star extends CelestialBody {
    * @return the first planet with that name, null if not found
    */
   private Planet searchPlanetByName(String name) {
-    for (Planet planet : planets) {
-      if (planet.getName().equalsIgnoreCase(name))
-        return planet;
+    LinkedHashSet<CelestialBody> celestialBodies = celestialBodiesByLowerCaseName.get(name.toLowerCase(Locale.ROOT));
+    if (celestialBodies == null)
+      return null;
+
+    for (CelestialBody celestialBody : celestialBodies) {
+      if (celestialBody instanceof Planet)
+        return (Planet) celestialBody;
     }
 
     return null;
   }
 
+  /**
+   * @param searchQuery ID or name of the satellite to search, a planet or the star with the same name is skipped
+   * @return the satellite or null if not found
+   */
+  public Satellite searchSatellite(String searchQuery) {
+    lock.readLock().lock();
+    try {
+      CelestialBody celestialBody = celestialBodiesByID.get(searchQuery);
+
+      if (celestialBody instanceof Satellite)
+        return (Satellite) celestialBody;
+
+      LinkedHashSet<CelestialBody> celestialBodies = celestialBodiesByLowerCaseName.get(
+          searchQuery.toLowerCase(Locale.ROOT));
+      if (celestialBodies == null)
+        return null;
+
+      for (CelestialBody sameName : celestialBodies) {
+        if (sameName instanceof Satellite)
+          return (Satellite) sameName;
+      }
+
+      return null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   /**
    * @param searchQuery ID or name of the celestial body to search
    * @return the celestial body or null if not found
    */
   public CelestialBody searchCelestialBody(String searchQuery) {
-    ArrayList<CelestialBody> celestialBodies = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      CelestialBody celestialBody = celestialBodiesByID.get(searchQuery);
 
-    celestialBodies.add(this);
-    celestialBodies.addAll(planets);
+      if (celestialBody != null)
+        return celestialBody;
 
-    for (Planet planet : planets)
-      celestialBodies.addAll(planet.getSatellites());
+      LinkedHashSet<CelestialBody> celestialBodies = celestialBodiesByName.get(searchQuery);
 
-    for (CelestialBody celestialBody : celestialBodies) {
-      if (celestialBody.getID().equals(searchQuery) || celestialBody.getName().equals(searchQuery))
-        return celestialBody;
+      return celestialBodies == null ? null : celestialBodies.iterator().next();
+    } finally {
+      lock.readLock().unlock();
     }
+  }
 
-    return null;
+  /**
+   * @param name of the celestial body to search, ignoring case
+   * @return the first celestial body added with that name, null if not found
+   */
+  public CelestialBody searchCelestialBodyIgnoreCase(String name) {
+    lock.readLock().lock();
+    try {
+      LinkedHashSet<CelestialBody> celestialBodies = celestialBodiesByLowerCaseName.get(name.toLowerCase(Locale.ROOT));
+
+      return celestialBodies == null ? null : celestialBodies.iterator().next();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param position to check
+   * @return true if no celestial body of this star's system is at that position, false otherwise
+   */
+  public boolean isPositionFree(Position position) {
+    lock.readLock().lock();
+    try {
+      return spatialGrid.searchAt(position) == null;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param center of the search
+   * @param radius maximum distance from center, inclusive
+   * @return the celestial bodies of this star's system whose distance from center is at most radius
+   */
+  public ArrayList<CelestialBody> searchCelestialBodiesWithin(Position center, double radius) {
+    lock.readLock().lock();
+    try {
+      return spatialGrid.searchWithin(center, radius);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
-  /**Method used to calculate the center of mass of this star's solar system
+
+  /**Method used to calculate the center of mass of this star's solar system.
+   * The compensated sums are kept up to date on every mutation, so cancellations don't lose the smaller masses, and
+   * recomputed in parallel every MUTATIONS_BETWEEN_RESUMS mutations, to drop the residual error
    * @return the center of mass of this star's solar system
+   * @see CenterOfMassTask
    */
   public Position centerOfMass() {
-    double totalSystemMass = getMass();
-    double weightedPositionSumX = 0;
-    double weightedPositionSumY = 0;
-    //weighted average position of the celestial bodies
-    for (Planet planet : planets) {
-      totalSystemMass += planet.getMass();
-
-      weightedPositionSumX += planet.getMass() * planet.getPosition().getX();
-      weightedPositionSumY += planet.getMass() * planet.getPosition().getY();
+    lock.readLock().lock();
+    try {
+      if (mutationsSinceResum < MUTATIONS_BETWEEN_RESUMS)
+        return runningSums.centerOfMass();
+    } finally {
+      lock.readLock().unlock();
+    }
 
-      for (Satellite satellite : planet.getSatellites()) {
-        totalSystemMass += satellite.getMass();
+    lock.writeLock().lock();
+    try {
+      if (mutationsSinceResum >= MUTATIONS_BETWEEN_RESUMS)
+        resum();
 
-        weightedPositionSumX += satellite.getMass() * satellite.getPosition().getX();
-        weightedPositionSumY += satellite.getMass() * satellite.getPosition().getY();
-      }
+      return runningSums.centerOfMass();
+    } finally {
+      lock.writeLock().unlock();
     }
-
-    return new Position(weightedPositionSumX / totalSystemMass, weightedPositionSumY / totalSystemMass);
   }
 
-  /**Method used to find the next route element to reach this star
-   * @param element the celestial body where the subroute starts
-   * @return if "element" is a satellite of this solar system, the return value is the satellite's orbiting planet, this star otherwise
+  /**
+   * @return the planet whose subsystem holds the celestial body in this solar system, null for the star and for the
+   *         celestial bodies outside the system
    */
-  private CelestialBody getNextRouteElement(CelestialBody element) {
-    if (element instanceof Satellite) {
-      for (Planet planet : planets) {
-        if (planet.doesSatelliteOrbitsAround((Satellite) element))
-          return planet;
-      }
-    }
+  private Planet getRoutePlanet(CelestialBody celestialBody) {
+    if (celestialBody instanceof Satellite)
+      return getOrbitingPlanet((Satellite) celestialBody);
+    if (celestialBody instanceof Planet && ((Planet) celestialBody).getStar() == this)
+      return (Planet) celestialBody;
 
-    return this;
+    return null;
   }
 
-  /**This method calculates the route to use to reach finish from start using the scheme moon1 > planet1 > star > planet2 > moon2
+  /**This method calculates the route to use to reach finish from start using the scheme moon1 > planet1 > star > planet2 > moon2,
+   * two celestial bodies of the same planet subsystem meet at their planet without passing through the star
    * @param start celetial body where the route starts
    * @param finish celestial body to reach
    * @return a linked list containing the ordered celestial bodies to pass through to reach finish from start (start/finish included) 
    */
+  @Override
   public LinkedList<CelestialBody> calculateRoute(CelestialBody start, CelestialBody finish) {
-    LinkedList<CelestialBody> startingList = new LinkedList<>(), finishingList = new LinkedList<>();
-    startingList.add(start);
-    finishingList.add(finish);
-    /*
-    cycle to add the "parent" of start to startingList and the "parent" of finish to finishingList until the to lists
-    reach a common element (the star or the orbiting planet, if start and finish are two satellites orbiting the same planet)
-    */
-    while (!startingList.getLast().equals(finishingList.getLast())) {
-      startingList.add(getNextRouteElement(startingList.getLast()));
-      finishingList.add(getNextRouteElement(finishingList.getLast()));
+    lock.readLock().lock();
+    try {
+      return calculateRouteLocked(start, finish);
+    } finally {
+      lock.readLock().unlock();
     }
-    //the last element is already in starting list
-    finishingList.removeLast();
-    while (!finishingList.isEmpty())
-      startingList.add(finishingList.removeLast());
+  }
 
-    return startingList;
+  private LinkedList<CelestialBody> calculateRouteLocked(CelestialBody start, CelestialBody finish) {
+    LinkedList<CelestialBody> route = new LinkedList<>();
+    Planet startPlanet = getRoutePlanet(start), finishPlanet = getRoutePlanet(finish);
+    // the common element of the two branches: the planet, if both are in its subsystem, or the star
+    CelestialBody meeting = startPlanet != null && startPlanet.equals(finishPlanet) ? startPlanet : this;
+
+    route.add(start);
+    if (start.equals(finish))
+      return route;
+
+    if (meeting == this && startPlanet != null && !start.equals(startPlanet))
+      route.add(startPlanet);
+    if (!start.equals(meeting) && !finish.equals(meeting))
+      route.add(meeting);
+    if (meeting == this && finishPlanet != null && !finish.equals(finishPlanet))
+      route.add(finishPlanet);
+    route.add(finish);
+
+    return route;
   }
 
-  /**
-   * @return an arraylist containing all celestial bodies in this star's system
+  /**Calculates the length of the route of calculateRoute in constant time, from the hierarchy distances cached in the
+   * celestial bodies and without building the route
+   * @param start celetial body where the route starts
+   * @param finish celestial body to reach
+   * @return the length of the route from start to finish
+   * @see #calculateRoute(CelestialBody, CelestialBody)
    */
-  private ArrayList<CelestialBody> getStarSystem() {
-    ArrayList<CelestialBody> starSystem = new ArrayList<>();
+  @Override
+  public double calculateRouteLength(CelestialBody start, CelestialBody finish) {
+    if (start.equals(finish))
+      return 0;
+
+    lock.readLock().lock();
+    try {
+      Planet startPlanet = getRoutePlanet(start), finishPlanet = getRoutePlanet(finish);
+
+      if (startPlanet != null && startPlanet.equals(finishPlanet))
+        return (start.equals(startPlanet) ? 0 : start.getParentDistance())
+            + (finish.equals(finishPlanet) ? 0 : finish.getParentDistance());
+
+      return getRouteStarDistance(start, startPlanet) + getRouteStarDistance(finish, finishPlanet);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
 
-    starSystem.add(this);
-    starSystem.addAll(planets);
-    for (Planet planet : planets)
-      starSystem.addAll(planet.getSatellites());
+  /**
+   * @return the distance from this star of a celestial body, straight to the star if it's outside the system
+   */
+  private double getRouteStarDistance(CelestialBody celestialBody, Planet routePlanet) {
+    if (celestialBody == this)
+      return 0;
+    if (routePlanet != null)
+      return celestialBody.getStarDistance();
 
-    return starSystem;
+    return celestialBody.getPosition().distance(getPosition());
   }
 
   /**If the satellite belongs to this solar system, this method will find the satellite's orbiting planet
    * @param satellite
    * @return satellite's orbiting planet if it belong's to this solar system, null otherwise
    */
-  private Planet getOrbitingPlanet(Satellite satellite) {
-    for (Planet planet : planets) {
-      if (planet.doesSatelliteOrbitsAround(satellite))
-        return planet;
-    }
+  public Planet getOrbitingPlanet(Satellite satellite) {
+    Planet orbitingPlanet = satellite.getOrbitingPlanet();
 
-    return null;
+    return orbitingPlanet != null && orbitingPlanet.getStar() == this ? orbitingPlanet : null;
   }
 
-  /**It calculates wether collisions may occur in the future or not in this solar system
-   * @return true if there will be collisions, false otherwise
+  /**It calculates wether collisions may occur in the future or not in this solar system.
+   * The detection runs on a snapshot, without blocking the threads changing the system
+   * @return the pairs of celestial bodies that may collide, empty if there will be no collisions
+   * @see CollisionDetector
    */
-  public boolean detectCollisions() {
-    ArrayList<CelestialBody> starSystem = getStarSystem();
-
-    for (int i = 0; i < starSystem.size() - 1; i++) {
-      CelestialBody current = starSystem.get(i);
-      for (int j = starSystem.size() - 1; j > 0; j--) {
-        CelestialBody toCheck = starSystem.get(j);
-
-        // Check for star vs satellites collisions
-        if (current instanceof Star) {
-          if (toCheck instanceof Planet)
-            break;
-
-          Satellite toCheckSatellite = (Satellite) toCheck;
-          Planet toCheckOrbitingPlanet = getOrbitingPlanet(toCheckSatellite);
-          if (toCheckOrbitingPlanet.getPosition().distance(getPosition()) == toCheckSatellite.getRelativePosition()
-              .distance(getPosition()))
-            return true;
-        }
-        // Check for planet collisions
-        else if (current instanceof Planet) {
-          // planet vs planet collision
-          if (toCheck instanceof Planet && current.getPosition().equals(toCheck.getPosition())) {
-            return true;
-          }
-          // planet vs satellite collision
-          else {
-            Satellite toCheckSatellite = (Satellite) toCheck;
-            double planetToStarDistance = current.getPosition().distance(getPosition());
-            if (toCheckSatellite.getMinStarDistance() <= planetToStarDistance
-                && planetToStarDistance <= toCheckSatellite.getMaxStarDistance())
-              return true;
-          }
-        }
-        // Check for satellite vs satellite collisions
-        else {
-          if (toCheck instanceof Planet)
-            break;
-
-          double currentMinStarDistance = ((Satellite) current).getMinStarDistance();
-          double currentMaxStarDistance = ((Satellite) current).getMaxStarDistance();
-          double toCheckMinStarDistance = ((Satellite) toCheck).getMinStarDistance();
-          double toCheckMaxStarDistance = ((Satellite) toCheck).getMaxStarDistance();
-
-          boolean firstCheck = currentMinStarDistance <= toCheckMinStarDistance
-              && toCheckMinStarDistance <= currentMaxStarDistance;
-          boolean secondCheck = currentMinStarDistance <= toCheckMaxStarDistance
-              && toCheckMinStarDistance <= currentMaxStarDistance;
-          boolean thirdCheck = toCheckMinStarDistance <= currentMinStarDistance
-              && currentMinStarDistance <= toCheckMaxStarDistance;
-          boolean fourthCheck = toCheckMinStarDistance <= currentMaxStarDistance
-              && currentMinStarDistance <= toCheckMaxStarDistance;
-          if (firstCheck || secondCheck || thirdCheck || fourthCheck)
-            return true;
-        }
-      }
-    }
-
-    return false;
+  public ArrayList<Collision> detectCollisions() {
+    return snapshot().detectCollisions();
   }
 }
@@ -0,0 +1,374 @@
+package plus;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+
+/**
+ * Streaming import and export of star systems as catalog files.
+ * A catalog has one record per celestial body with the fields type (star, planet or satellite), id, name, mass, x, y
+ * and planet, the ID or name of the planet a satellite orbits around. The star comes first, and every satellite comes
+ * after its planet. Records are read and written one line at a time, as CSV with a header line or as JSON Lines, so
+ * the memory used doesn't depend on the size of the catalog. Satellite coordinates follow the relative positioning
+ * of the Satellite constructor: with relative positioning they are relative to the planet, as in toStringRelative
+ */
+public class StarSystemCatalog {
+  public enum Format {
+    CSV,
+    JSON
+  }
+
+  private static final String[] FIELDS = { "type", "id", "name", "mass", "x", "y", "planet" };
+  private static final String STAR = "star";
+  private static final String PLANET = "planet";
+  private static final String SATELLITE = "satellite";
+
+  private StarSystemCatalog() {
+  }
+
+  /**Builds a star system from a catalog
+   * @param reader of the catalog
+   * @param format of the catalog
+   * @param relativePositioning true if the satellite coordinates are relative to their planet
+   * @return the star of the imported system
+   * @throws IOException if the catalog can't be read or a record is malformed
+   * @throws IllegalStateException if the catalog exceeds MAX_PLANETS or MAX_SATELLITES
+   */
+  public static Star read(Reader reader, Format format, boolean relativePositioning)
+      throws IOException, IllegalStateException {
+    BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader
+        : new BufferedReader(reader, 1 << 16);
+    // catalog IDs of the planets, satellites may refer to them
+    HashMap<String, Planet> planetsByCatalogID = new HashMap<>();
+    String[] record = new String[FIELDS.length];
+    Star star = null;
+
+    String line;
+    int lineNumber = 0;
+    while ((line = lines.readLine()) != null) {
+      lineNumber++;
+      if (line.isBlank() || (format == Format.CSV && lineNumber == 1 && line.startsWith(FIELDS[0])))
+        continue;
+
+      try {
+        if (format == Format.CSV)
+          parseCsv(line, record);
+        else
+          parseJson(line, record);
+
+        String type = requireField(record, 0);
+        String name = requireField(record, 2);
+        double mass = Double.parseDouble(requireField(record, 3));
+        Position position = new Position(Double.parseDouble(requireField(record, 4)),
+            Double.parseDouble(requireField(record, 5)));
+
+        if (STAR.equals(type)) {
+          if (star != null)
+            throw new IllegalArgumentException("more than one star");
+          star = new Star(name, mass, position);
+          continue;
+        }
+
+        if (star == null)
+          throw new IllegalArgumentException("the star must be the first record");
+
+        if (PLANET.equals(type)) {
+          checkPositionFree(star, position);
+          Planet planet = new Planet(name, mass, position);
+          star.addPlanet(planet);
+          if (record[1] != null && !record[1].isEmpty())
+            planetsByCatalogID.put(record[1], planet);
+        } else if (SATELLITE.equals(type)) {
+          String planetID = requireField(record, 6);
+          Planet planet = planetsByCatalogID.get(planetID);
+          if (planet == null)
+            planet = star.searchPlanet(planetID);
+          if (planet == null)
+            throw new IllegalArgumentException("planet " + planetID + " not found");
+
+          Satellite satellite = new Satellite(name, mass, position, relativePositioning, planet);
+          checkPositionFree(star, satellite.getPosition());
+          planet.addSatellite(satellite);
+        } else {
+          throw new IllegalArgumentException("unknown type " + type);
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IOException(String.format("Malformed record at line %d: %s", lineNumber, e.getMessage()), e);
+      }
+    }
+
+    if (star == null)
+      throw new IOException("The catalog has no star");
+
+    return star;
+  }
+
+  /**
+   * @return the value of the field
+   * @throws IllegalArgumentException if the field is missing or empty
+   */
+  private static String requireField(String[] record, int field) throws IllegalArgumentException {
+    if (record[field] == null || record[field].isEmpty())
+      throw new IllegalArgumentException("missing " + FIELDS[field]);
+
+    return record[field];
+  }
+
+  private static void checkPositionFree(Star star, Position position) throws IllegalArgumentException {
+    if (!star.isPositionFree(position))
+      throw new IllegalArgumentException(String.format("position %s already taken", position));
+  }
+
+  /**Writes the star system as a catalog, streaming the planets and the satellites while holding the read lock of
+   * the star, so the system can't change during the export and no copy of it is made
+   * @param star whose system has to be exported
+   * @param writer of the catalog, flushed but not closed
+   * @param format of the catalog
+   * @param relativePositioning true to write the satellite coordinates relative to their planet
+   * @throws IOException if the catalog can't be written
+   */
+  public static void write(Star star, Writer writer, Format format, boolean relativePositioning)
+      throws IOException {
+    BufferedWriter output = writer instanceof BufferedWriter ? (BufferedWriter) writer
+        : new BufferedWriter(writer, 1 << 16);
+    StringBuilder line = new StringBuilder();
+
+    if (format == Format.CSV) {
+      output.write(String.join(",", FIELDS));
+      output.newLine();
+    }
+
+    star.getLock().readLock().lock();
+    try {
+      writeRecord(output, line, format, STAR, star, star.getPosition(), null);
+      for (Planet planet : star.getLivePlanets()) {
+        writeRecord(output, line, format, PLANET, planet, planet.getPosition(), null);
+
+        for (Satellite satellite : planet.getLiveSatellites())
+          writeRecord(output, line, format, SATELLITE, satellite,
+              relativePositioning ? satellite.getRelativePosition() : satellite.getPosition(), planet.getID());
+      }
+    } finally {
+      star.getLock().readLock().unlock();
+    }
+
+    output.flush();
+  }
+
+  private static void writeRecord(BufferedWriter output, StringBuilder line, Format format, String type,
+      CelestialBody celestialBody, Position position, String planetID) throws IOException {
+    String[] values = { type, celestialBody.getID(), celestialBody.getName(),
+        Double.toString(celestialBody.getMass()), Double.toString(position.getX()), Double.toString(position.getY()),
+        planetID };
+
+    line.setLength(0);
+    if (format == Format.CSV) {
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0)
+          line.append(',');
+        if (values[i] != null)
+          appendCsv(line, values[i]);
+      }
+    } else {
+      line.append('{');
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] == null)
+          continue;
+        if (line.length() > 1)
+          line.append(',');
+
+        appendJsonString(line, FIELDS[i]).append(':');
+        // mass and coordinates are numbers, everything else is a string
+        if (i >= 3 && i <= 5)
+          line.append(values[i]);
+        else
+          appendJsonString(line, values[i]);
+      }
+      line.append('}');
+    }
+
+    output.append(line);
+    output.newLine();
+  }
+
+  private static void appendCsv(StringBuilder line, String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+      line.append(value);
+      return;
+    }
+
+    line.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char character = value.charAt(i);
+      if (character == '"')
+        line.append('"');
+      line.append(character);
+    }
+    line.append('"');
+  }
+
+  static StringBuilder appendJsonString(StringBuilder line, String value) {
+    line.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char character = value.charAt(i);
+      if (character == '"' || character == '\\')
+        line.append('\\').append(character);
+      else if (character < 0x20)
+        line.append(String.format("\\u%04x", (int) character));
+      else
+        line.append(character);
+    }
+
+    return line.append('"');
+  }
+
+  /**Splits a CSV line in the record fields, double quotes enclose values containing commas or quotes
+   * @param line to parse
+   * @param record where to store the fields, empty fields are null
+   */
+  private static void parseCsv(String line, String[] record) {
+    StringBuilder value = new StringBuilder();
+    int field = 0;
+    boolean quoted = false;
+
+    for (int i = 0; i <= line.length(); i++) {
+      char character = i < line.length() ? line.charAt(i) : ',';
+
+      if (quoted) {
+        if (character == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else if (character == '"') {
+          quoted = false;
+        } else {
+          value.append(character);
+        }
+      } else if (character == '"') {
+        quoted = true;
+      } else if (character == ',') {
+        if (field >= record.length)
+          throw new IllegalArgumentException("too many fields");
+        record[field++] = value.length() == 0 ? null : value.toString();
+        value.setLength(0);
+      } else {
+        value.append(character);
+      }
+    }
+
+    if (quoted)
+      throw new IllegalArgumentException("unterminated quote");
+    if (field != record.length)
+      throw new IllegalArgumentException(String.format("expected %d fields, found %d", record.length, field));
+  }
+
+  /**Reads a flat JSON object with string and number values in the record fields
+   * @param line containing the object
+   * @param record where to store the fields, missing fields are null
+   */
+  private static void parseJson(String line, String[] record) {
+    for (int i = 0; i < record.length; i++)
+      record[i] = null;
+
+    StringBuilder value = new StringBuilder();
+    int i = skipSpaces(line, 0);
+    if (i >= line.length() || line.charAt(i) != '{')
+      throw new IllegalArgumentException("expected an object");
+    i = skipSpaces(line, i + 1);
+
+    while (i < line.length() && line.charAt(i) != '}') {
+      i = parseJsonString(line, i, value);
+      String key = value.toString();
+
+      i = skipSpaces(line, i);
+      if (i >= line.length() || line.charAt(i) != ':')
+        throw new IllegalArgumentException("expected ':' after " + key);
+      i = skipSpaces(line, i + 1);
+
+      if (i < line.length() && line.charAt(i) == '"') {
+        i = parseJsonString(line, i, value);
+      } else {
+        value.setLength(0);
+        while (i < line.length() && ",} \t".indexOf(line.charAt(i)) < 0)
+          value.append(line.charAt(i++));
+      }
+
+      for (int field = 0; field < FIELDS.length; field++) {
+        if (FIELDS[field].equals(key))
+          record[field] = value.toString();
+      }
+
+      i = skipSpaces(line, i);
+      if (i < line.length() && line.charAt(i) == ',')
+        i = skipSpaces(line, i + 1);
+    }
+
+    if (i >= line.length())
+      throw new IllegalArgumentException("unterminated object");
+  }
+
+  /**
+   * @return the index after the closing quote of the string starting at start
+   */
+  private static int parseJsonString(String line, int start, StringBuilder value) {
+    if (start >= line.length() || line.charAt(start) != '"')
+      throw new IllegalArgumentException("expected a string");
+
+    value.setLength(0);
+    for (int i = start + 1; i < line.length(); i++) {
+      char character = line.charAt(i);
+
+      if (character == '"')
+        return i + 1;
+
+      if (character == '\\' && i + 1 < line.length()) {
+        char escaped = line.charAt(++i);
+        switch (escaped) {
+          case 'n':
+            value.append('\n');
+            break;
+
+          case 't':
+            value.append('\t');
+            break;
+
+          case 'r':
+            value.append('\r');
+            break;
+
+          case 'b':
+            value.append('\b');
+            break;
+
+          case 'f':
+            value.append('\f');
+            break;
+
+          case 'u':
+            if (i + 4 >= line.length())
+              throw new IllegalArgumentException("truncated escape");
+            value.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+            i += 4;
+            break;
+
+          default:
+            value.append(escaped);
+            break;
+        }
+      } else {
+        value.append(character);
+      }
+    }
+
+    throw new IllegalArgumentException("unterminated string");
+  }
+
+  private static int skipSpaces(String line, int i) {
+    while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+      i++;
+
+    return i;
+  }
+}
@@ -1,5 +1,6 @@
 package plus;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 
 import it.kibo.fp.lib.AnsiColors;
@@ -7,6 +8,8 @@ import it.kibo.fp.lib.InputData;
 import it.kibo.fp.lib.Menu;
 
 public class StarSystemController extends Menu {
+  private static final int MAX_LISTED_COLLISIONS = 20;
+
   private final String STAR_COLORS = "" + AnsiColors.YELLOW_BACKGROUND + AnsiColors.BLACK + "Star" + AnsiColors.RESET;
   private final String PLANET_COLORS = "" + AnsiColors.BLUE_BACKGROUND + AnsiColors.BLACK + "Planet" + AnsiColors.RESET;
   private final String SATELLITE_COLORS = "" + AnsiColors.WHITE_BACKGROUND + AnsiColors.BLACK + "Satellite"
@@ -54,7 +57,7 @@ public class StarSystemController extends Menu {
   // TODO: Remove in production
   private Star createTestingStarSystem() {
     relativePositioning = false;
-    Star star = new Star("Sole", 30, new Position(0, 0));
+    Star star = new Star("Sole", 30, Position.ORIGIN);
 
     Planet planetOne = new Planet("Pianeta1", 5, new Position(0, -3));
     Planet planetTwo = new Planet("Pianeta2", 7, new Position(3, 3));
@@ -82,7 +85,7 @@ public class StarSystemController extends Menu {
       return createTestingStarSystem();
 
     double mass = InputData.readDoubleWithMinimum(String.format("What is %s mass? ", name), 0);
-    Position position = new Position(0, 0);
+    Position position = Position.ORIGIN;
 
     relativePositioning = InputData.readYesOrNo("Would you like to use the relative positioning");
 
@@ -104,20 +107,7 @@ public class StarSystemController extends Menu {
   }
 
   private boolean isPositionFree(Position position) {
-    if (star.getPosition().equals(position))
-      return false;
-
-    for (Planet planet : star.getPlanets()) {
-      if (planet.getPosition().equals(position))
-        return false;
-
-      for (Satellite satellite : planet.getSatellites()) {
-        if (satellite.getPosition().equals(position))
-          return false;
-      }
-    }
-
-    return true;
+    return star.isPositionFree(position);
   }
 
   private String generateStarSystemString() {
@@ -125,11 +115,11 @@ public class StarSystemController extends Menu {
         String.format("Relative positioning " + (relativePositioning ? ON : OFF) + "\n" + STAR_COLORS + ": %s\n",
             star));
 
-    for (Planet planet : star.getPlanets()) {
+    for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : star.snapshot().getPlanets()) {
       starSystem
-          .append(String.format("\t- " + PLANET_COLORS + ": %s\n", planet));
+          .append(String.format("\t- " + PLANET_COLORS + ": %s\n", planetSnapshot.getPlanet()));
 
-      for (Satellite satellite : planet.getSatellites())
+      for (Satellite satellite : planetSnapshot.getSatellites())
         starSystem.append(String
             .format("\t\t- " + SATELLITE_COLORS + ": %s\n",
                 relativePositioning ? satellite.toStringRelative() : satellite));
@@ -155,34 +145,16 @@ public class StarSystemController extends Menu {
     StringBuilder satelliteString = new StringBuilder(
         String.format(STAR_COLORS + "%s" + AnsiColors.RESET + " > ", star.getName()));
 
-    for (Planet planet : star.getPlanets()) {
-      if (planet.doesSatelliteOrbitsAround(satellite)) {
-        satelliteString.append(String.format(
-            PLANET_COLORS + "%s" + AnsiColors.RESET + " > " + SATELLITE_COLORS + "%s" + AnsiColors.RESET,
-            planet.getName(),
-            satellite.getName()));
-
-        return satelliteString.toString();
-      }
-    }
+    Planet planet = star.getOrbitingPlanet(satellite);
+    if (planet != null)
+      satelliteString.append(String.format(
+          PLANET_COLORS + "%s" + AnsiColors.RESET + " > " + SATELLITE_COLORS + "%s" + AnsiColors.RESET,
+          planet.getName(),
+          satellite.getName()));
 
     return satelliteString.toString();
   }
 
-  private double calculateRouteLength(LinkedList<CelestialBody> route) {
-    double length = 0;
-
-    CelestialBody previous = null;
-    for (CelestialBody current : route) {
-      if (previous != null)
-        length += previous.getPosition().distance(current.getPosition());
-
-      previous = current;
-    }
-
-    return length;
-  }
-
   public void addPlanet() {
     String name = InputData.readNonEmptyString("What is the planet name? ", true);
     double mass = InputData.readDoubleWithMinimum(String.format("What is %s mass? ", name), 0);
@@ -283,10 +255,12 @@ public class StarSystemController extends Menu {
   }
 
   public void removeSatellite() {
-    for (Planet planet : star.getPlanets()) {
-      Satellite satellite = planet.searchSatellite(
-          InputData.readNonEmptyString("Which planet would you like to remove (insert ID or name)? ", false));
-      if (satellite != null) {
+    Satellite satellite = star.searchSatellite(
+        InputData.readNonEmptyString("Which satellite would you like to remove (insert ID or name)? ", false));
+
+    if (satellite != null) {
+      Planet planet = star.getOrbitingPlanet(satellite);
+      if (planet != null) {
         planet.removeSatellite(satellite);
 
         successfulMessage(String.format("The satellite %s was successfully removed", satellite.getName()));
@@ -331,21 +305,19 @@ public class StarSystemController extends Menu {
       }
 
       if (celestialBody instanceof Satellite) {
-        Satellite searchedSatellite = (Satellite) celestialBody;
-
-        for (Planet planet : star.getPlanets()) {
-          if (planet.doesSatelliteOrbitsAround(searchedSatellite)) {
-            successfulMessage(String.format(
-                "The celestial body you searched is a satellite of the system that orbits around the planet %s",
-                planet.getName()));
-
-            try {
-              wait(5000);
-            } catch (InterruptedException e) {
-              e.printStackTrace();
-            }
-            return;
+        Planet planet = star.getOrbitingPlanet((Satellite) celestialBody);
+
+        if (planet != null) {
+          successfulMessage(String.format(
+              "The celestial body you searched is a satellite of the system that orbits around the planet %s",
+              planet.getName()));
+
+          try {
+            wait(5000);
+          } catch (InterruptedException e) {
+            e.printStackTrace();
           }
+          return;
         }
       }
 
@@ -456,7 +428,7 @@ public class StarSystemController extends Menu {
       }
 
       LinkedList<CelestialBody> route = star.calculateRoute(startingCelestialBody, finishingCelestialBody);
-      double routeLength = calculateRouteLength(route);
+      double routeLength = star.calculateRouteLength(startingCelestialBody, finishingCelestialBody);
 
       StringBuilder stringedRoute = new StringBuilder(route.removeFirst().getName() + " > ");
 
@@ -479,8 +451,17 @@ public class StarSystemController extends Menu {
       e.printStackTrace();
     }
 
+    ArrayList<Collision> collisions = star.detectCollisions();
+
     System.out.println("Collisions detected: "
-        + (star.detectCollisions() ? AnsiColors.GREEN + "TRUE" : AnsiColors.RED + "FALSE") + AnsiColors.RESET);
+        + (!collisions.isEmpty() ? AnsiColors.GREEN + "TRUE" : AnsiColors.RED + "FALSE") + AnsiColors.RESET);
+    if (!collisions.isEmpty())
+      System.out.println("Colliding pairs: " + collisions.size());
+    // large systems can have millions of pairs, only the first ones are listed
+    for (int i = 0; i < Math.min(collisions.size(), MAX_LISTED_COLLISIONS); i++)
+      System.out.println("\t- " + collisions.get(i));
+    if (collisions.size() > MAX_LISTED_COLLISIONS)
+      System.out.printf("\t... and %d more\n", collisions.size() - MAX_LISTED_COLLISIONS);
 
     try {
       wait(3000);
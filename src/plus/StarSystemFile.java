@@ -0,0 +1,235 @@
+package plus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary persistence of a star system.
+ * The file starts with a header (magic number, format version, number of records and offset of the string table),
+ * followed by one fixed width record per celestial body: the star first, then every planet followed by its
+ * satellites. The names are stored once in a string table at the end of the file and referenced by index. Loading
+ * memory maps the records, so they are decoded straight from the page cache without any intermediate copy.
+ */
+public class StarSystemFile {
+  private static final int MAGIC = 0x504C4E32; // PLN2
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 24;
+  private static final int RECORD_SIZE = 48;
+  // the largest multiple of RECORD_SIZE that can be mapped at once
+  private static final long MAX_MAPPED_RECORDS = Integer.MAX_VALUE / RECORD_SIZE;
+  private static final int WRITE_BUFFER_RECORDS = 1 << 14;
+
+  private static final byte STAR = 0;
+  private static final byte PLANET = 1;
+  private static final byte SATELLITE = 2;
+
+  private StarSystemFile() {
+  }
+
+  /**Writes a snapshot of the star system to the file, replacing it if it exists
+   * @param star whose system has to be saved
+   * @param path of the file
+   * @throws IOException if the file can't be written
+   */
+  public static void save(Star star, Path path) throws IOException {
+    save(star.snapshot(), path);
+  }
+
+  /**Writes the snapshot of a star system to the file, replacing it if it exists, and forces it to disk
+   * @param snapshot of the star system to save
+   * @param path of the file
+   * @throws IOException if the file can't be written
+   */
+  public static void save(StarSystemSnapshot snapshot, Path path) throws IOException {
+    Star star = snapshot.getStar();
+    HashMap<String, Integer> stringIndexes = new HashMap<>();
+    ArrayList<String> strings = new ArrayList<>();
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * WRITE_BUFFER_RECORDS);
+      buffer.position(HEADER_SIZE);
+
+      long records = 0;
+      putRecord(buffer, STAR, star, -1, stringIndexes, strings);
+      records++;
+
+      for (StarSystemSnapshot.PlanetSnapshot planetSnapshot : snapshot.getPlanets()) {
+        long planetRecord = records;
+
+        flushIfFull(channel, buffer);
+        putRecord(buffer, PLANET, planetSnapshot.getPlanet(), -1, stringIndexes, strings);
+        records++;
+
+        for (Satellite satellite : planetSnapshot.getSatellites()) {
+          flushIfFull(channel, buffer);
+          putRecord(buffer, SATELLITE, satellite, planetRecord, stringIndexes, strings);
+          records++;
+        }
+      }
+      flush(channel, buffer);
+
+      long stringTableOffset = channel.position();
+      DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+      output.writeInt(strings.size());
+      for (String string : strings)
+        output.writeUTF(string);
+      output.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(records).putLong(stringTableOffset).flip();
+      channel.write(header, 0);
+      channel.force(true);
+    }
+  }
+
+  /**Reads a star system saved with save
+   * @param path of the file
+   * @return the star of the loaded system, with its planets and satellites
+   * @throws IOException if the file can't be read, isn't a star system file or holds a system that breaks the rules
+   *                     of the star system, such as the number of planets or two bodies sharing the same position
+   */
+  public static Star load(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0)
+        ;
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+        throw new IOException("Not a star system file");
+      if (header.getInt() != FORMAT_VERSION)
+        throw new IOException("Unsupported star system file version");
+
+      long records = header.getLong();
+      long stringTableOffset = header.getLong();
+      if (records < 1 || records > (channel.size() - HEADER_SIZE) / RECORD_SIZE
+          || HEADER_SIZE + records * RECORD_SIZE != stringTableOffset)
+        throw new IOException("Corrupted star system file");
+
+      String[] strings = readStrings(channel, stringTableOffset);
+
+      Star star = null;
+      ArrayList<Planet> planets = new ArrayList<>();
+      Planet planet = null;
+      ArrayList<Satellite> satellites = new ArrayList<>();
+      long planetRecord = -1;
+
+      for (long first = 0; first < records; first += MAX_MAPPED_RECORDS) {
+        long count = Math.min(MAX_MAPPED_RECORDS, records - first);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE,
+            count * RECORD_SIZE);
+
+        for (long record = first; record < first + count; record++) {
+          byte kind = buffer.get();
+          buffer.position(buffer.position() + 3);
+          int nameIndex = buffer.getInt();
+          if (nameIndex < 0 || nameIndex >= strings.length)
+            throw new IOException("Corrupted star system file");
+          String name = strings[nameIndex];
+          long ID = buffer.getLong();
+          double mass = buffer.getDouble();
+          Position position = new Position(buffer.getDouble(), buffer.getDouble());
+          long parentRecord = buffer.getInt();
+          buffer.getInt();
+
+          // the star comes first, so the planets and the satellites always have a system to join
+          if ((record == 0) != (kind == STAR))
+            throw new IOException("Corrupted star system file");
+
+          switch (kind) {
+            case STAR:
+              star = new Star(ID, name, mass, position);
+              break;
+
+            case PLANET:
+              if (planet != null)
+                planet.addSatellites(satellites);
+              satellites.clear();
+
+              planet = new Planet(ID, name, mass, position);
+              planets.add(planet);
+              planetRecord = record;
+              break;
+
+            case SATELLITE:
+              if (planet == null || parentRecord != planetRecord)
+                throw new IOException("Corrupted star system file");
+              satellites.add(new Satellite(ID, name, mass, position, planet));
+              break;
+
+            default:
+              throw new IOException("Corrupted star system file");
+          }
+        }
+      }
+
+      if (planet != null)
+        planet.addSatellites(satellites);
+      star.addPlanets(planets);
+
+      return star;
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      // the records are well formed, but the system they describe can't exist
+      throw new IOException("Corrupted star system file", e);
+    }
+  }
+
+  private static String[] readStrings(FileChannel channel, long stringTableOffset) throws IOException {
+    channel.position(stringTableOffset);
+    DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+
+    // every string takes at least the 2 bytes of its length
+    int count = input.readInt();
+    if (count < 0 || count > (channel.size() - stringTableOffset) / 2)
+      throw new IOException("Corrupted star system file");
+
+    String[] strings = new String[count];
+    for (int i = 0; i < strings.length; i++)
+      strings[i] = input.readUTF().intern();
+
+    return strings;
+  }
+
+  private static void putRecord(ByteBuffer buffer, byte kind, CelestialBody celestialBody, long parentRecord,
+      HashMap<String, Integer> stringIndexes, ArrayList<String> strings) {
+    Integer nameIndex = stringIndexes.get(celestialBody.getName());
+    if (nameIndex == null) {
+      nameIndex = strings.size();
+      stringIndexes.put(celestialBody.getName(), nameIndex);
+      strings.add(celestialBody.getName());
+    }
+
+    buffer.put(kind).put((byte) 0).put((byte) 0).put((byte) 0);
+    buffer.putInt(nameIndex);
+    buffer.putLong(celestialBody.getNumericID());
+    buffer.putDouble(celestialBody.getMass());
+    buffer.putDouble(celestialBody.getPosition().getX());
+    buffer.putDouble(celestialBody.getPosition().getY());
+    buffer.putInt((int) parentRecord);
+    buffer.putInt(0);
+  }
+
+  private static void flushIfFull(FileChannel channel, ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < RECORD_SIZE)
+      flush(channel, buffer);
+  }
+
+  private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+    buffer.clear();
+  }
+}
@@ -0,0 +1,136 @@
+package plus;
+
+import java.util.Random;
+
+/**
+ * Seeded generator of synthetic star systems, for load tests and benchmarks.
+ * The same seed and configuration always give the same system. Planets and satellites are added to the star as soon
+ * as they are created, without building any intermediate collection.
+ */
+public class StarSystemGenerator {
+  /**
+   * How the planets are laid out around the star
+   */
+  public enum Layout {
+    /** one planet per ring, rings are PLANET_SPACING apart, so the bands of different planets never overlap */
+    RINGS,
+    /** planets drawn uniformly in a disk whose area grows with the number of planets, PLANET_SPACING squared each */
+    DISK
+  }
+
+  public static final double PLANET_SPACING = 10;
+  public static final double MIN_ORBIT_RADIUS = 0.5;
+  public static final double MAX_ORBIT_RADIUS = 2;
+
+  private final long seed;
+  private int planets;
+  private int minSatellites;
+  private int maxSatellites;
+  private Layout layout;
+
+  /**
+   * @param seed of the random draws
+   */
+  public StarSystemGenerator(long seed) {
+    this.seed = seed;
+    planets = 10;
+    minSatellites = 0;
+    maxSatellites = 4;
+    layout = Layout.RINGS;
+  }
+
+  /**
+   * @param planets number of planets to generate
+   * @return this generator
+   * @throws IllegalArgumentException if planets is negative or more than Star.MAX_PLANETS
+   */
+  public StarSystemGenerator setPlanets(int planets) throws IllegalArgumentException {
+    if (planets < 0 || planets > Star.MAX_PLANETS)
+      throw new IllegalArgumentException(
+          String.format("The number of planets must be between 0 and %d", Star.MAX_PLANETS));
+
+    this.planets = planets;
+
+    return this;
+  }
+
+  /**Every planet gets a number of satellites drawn uniformly between min and max
+   * @param min number of satellites per planet
+   * @param max number of satellites per planet
+   * @return this generator
+   * @throws IllegalArgumentException if min is negative, max is less than min or more than Planet.MAX_SATELLITES
+   */
+  public StarSystemGenerator setSatellitesPerPlanet(int min, int max) throws IllegalArgumentException {
+    if (min < 0 || max > Planet.MAX_SATELLITES)
+      throw new IllegalArgumentException(
+          String.format("The number of satellites must be between 0 and %d", Planet.MAX_SATELLITES));
+    if (max < min)
+      throw new IllegalArgumentException(String.format(
+          "The maximum number of satellites (%d) must be greater than or equal to the minimum (%d)", max, min));
+
+    minSatellites = min;
+    maxSatellites = max;
+
+    return this;
+  }
+
+  public StarSystemGenerator setLayout(Layout layout) {
+    this.layout = layout;
+
+    return this;
+  }
+
+  /**
+   * @param name of the star
+   * @param mass of the star
+   * @return a new star, at the origin, with the generated planets and satellites
+   */
+  public Star generate(String name, double mass) {
+    Random random = new Random(seed);
+    Star star = new Star(name, mass, Position.ORIGIN);
+
+    for (int i = 0; i < planets; i++) {
+      Planet planet = new Planet("Planet" + i, 1 + random.nextDouble() * 10, drawPlanetPosition(star, i, random));
+      star.addPlanet(planet);
+
+      int satellites = minSatellites + random.nextInt(maxSatellites - minSatellites + 1);
+      for (int j = 0; j < satellites; j++) {
+        Position relativePosition;
+        do {
+          relativePosition = drawPolar(MIN_ORBIT_RADIUS + random.nextDouble() * (MAX_ORBIT_RADIUS - MIN_ORBIT_RADIUS),
+              random);
+        } while (!star.isPositionFree(relativePosition.add(planet.getPosition())));
+
+        planet.addSatellite(new Satellite("Moon" + i + "_" + j, random.nextDouble(), relativePosition, true, planet));
+      }
+    }
+
+    return star;
+  }
+
+  private Position drawPlanetPosition(Star star, int index, Random random) {
+    Position position;
+    do {
+      switch (layout) {
+        case DISK:
+          // the area grows with the number of planets, so the density of the disk doesn't depend on it, and sqrt of
+          // the draw keeps the density uniform over the area
+          double diskRadius = PLANET_SPACING * Math.sqrt(planets);
+          position = drawPolar(diskRadius * Math.sqrt(random.nextDouble()), random);
+          break;
+
+        default:
+          position = drawPolar(PLANET_SPACING * (index + 1), random);
+          break;
+      }
+    } while (!star.isPositionFree(position));
+
+    return position;
+  }
+
+  private static Position drawPolar(double radius, Random random) {
+    double angle = random.nextDouble() * 2 * Math.PI;
+
+    return new Position(radius * Math.cos(angle), radius * Math.sin(angle));
+  }
+}
@@ -0,0 +1,394 @@
+package plus;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import it.kibo.fp.lib.AnsiColors;
+
+/**
+ * Append only write ahead log of the mutations of a star system.
+ * Once attached to a star, every planet or satellite added or removed is encoded in memory while the star is locked,
+ * and a background thread writes the pending records in one sequential write (group commit) every flush interval,
+ * forcing them to disk if fsync is enabled. The journal lives in a directory together with the last snapshot of the
+ * system: compaction saves a new snapshot and drops the journal segments it covers, and recovery loads the snapshot
+ * and replays the remaining segments in order.
+ * <p>
+ * A mutation is durable only once a flush covering it has returned: the mutations acknowledged since the last flush,
+ * at most one flush interval of them, are lost by a crash. Callers needing a mutation on disk before going on call
+ * flush, which writes the pending records right away. If the background thread fails to write a segment, the failure
+ * is kept, every following mutation of the star is refused with an IllegalStateException and close throws it.
+ * @see StarSystemFile
+ */
+public class StarSystemJournal implements Closeable {
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+  public static final long DEFAULT_COMPACTION_SIZE = 64L << 20;
+
+  private static final String SNAPSHOT_FILE = "snapshot.bin";
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private static final byte ADD_PLANET = 1;
+  private static final byte ADD_SATELLITE = 2;
+  private static final byte REMOVE = 3;
+
+  private final Path directory;
+  private final Star star;
+  private final boolean fsync;
+  private final long flushIntervalMillis;
+  private final long compactionSize;
+  private final ReentrantLock ioLock = new ReentrantLock();
+  private final Thread flusher;
+
+  private ByteArrayOutputStream pending;
+  private DataOutputStream pendingOutput;
+  private FileChannel segment;
+  private long segmentNumber;
+  private volatile boolean closed;
+  private volatile IOException failure;
+
+  /**Attaches a new journal to the star, saving a first snapshot if the directory has none
+   * @param directory where the snapshot and the journal segments are kept, created if missing
+   * @param star whose mutations have to be logged
+   * @param fsync true to force every group of records to disk, false to leave it to the operating system
+   * @param flushIntervalMillis maximum time a record waits in memory before being written
+   * @throws IOException if the directory or the files can't be written
+   */
+  public StarSystemJournal(Path directory, Star star, boolean fsync, long flushIntervalMillis) throws IOException {
+    this(directory, star, fsync, flushIntervalMillis, DEFAULT_COMPACTION_SIZE);
+  }
+
+  /**
+   * @param compactionSize size of the current segment, in bytes, above which the journal is compacted
+   * @see #StarSystemJournal(Path, Star, boolean, long)
+   */
+  public StarSystemJournal(Path directory, Star star, boolean fsync, long flushIntervalMillis, long compactionSize)
+      throws IOException {
+    this.directory = directory;
+    this.star = star;
+    this.fsync = fsync;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.compactionSize = compactionSize;
+
+    Files.createDirectories(directory);
+    ArrayList<Long> segments = segmentNumbers(directory);
+    segmentNumber = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+    pending = new ByteArrayOutputStream();
+    pendingOutput = new DataOutputStream(pending);
+
+    star.getLock().writeLock().lock();
+    try {
+      openSegment(segmentNumber + 1);
+      star.setJournal(this);
+    } finally {
+      star.getLock().writeLock().unlock();
+    }
+
+    if (!Files.exists(directory.resolve(SNAPSHOT_FILE)))
+      compact();
+
+    flusher = new Thread(this::flushPeriodically, "star-system-journal");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**Loads the last snapshot saved in the directory and replays the journal segments on top of it
+   * @param directory where the snapshot and the journal segments are kept
+   * @return the recovered star, null if the directory holds no snapshot
+   * @throws IOException if the files can't be read
+   */
+  public static Star recover(Path directory) throws IOException {
+    Path snapshot = directory.resolve(SNAPSHOT_FILE);
+    if (!Files.exists(snapshot))
+      return null;
+
+    Star star = StarSystemFile.load(snapshot);
+    for (long segmentNumber : segmentNumbers(directory))
+      replay(star, segmentPath(directory, segmentNumber));
+
+    return star;
+  }
+
+  /**Encodes the mutation of a celestial body, callers must hold the write lock of the star
+   * @param added true if the celestial body was added, false if it was removed
+   * @param celestialBody added or removed
+   */
+  void append(boolean added, CelestialBody celestialBody) {
+    synchronized (this) {
+      // nothing is written after a failure, the records would only pile up in memory
+      if (failure != null)
+        return;
+
+      try {
+        if (!added) {
+          pendingOutput.writeByte(REMOVE);
+          pendingOutput.writeLong(celestialBody.getNumericID());
+          return;
+        }
+
+        Planet orbitingPlanet = celestialBody instanceof Satellite ? ((Satellite) celestialBody).getOrbitingPlanet()
+            : null;
+        pendingOutput.writeByte(orbitingPlanet != null ? ADD_SATELLITE : ADD_PLANET);
+        pendingOutput.writeLong(celestialBody.getNumericID());
+        pendingOutput.writeLong(orbitingPlanet != null ? orbitingPlanet.getNumericID() : 0);
+        pendingOutput.writeDouble(celestialBody.getMass());
+        pendingOutput.writeDouble(celestialBody.getPosition().getX());
+        pendingOutput.writeDouble(celestialBody.getPosition().getY());
+        pendingOutput.writeUTF(celestialBody.getName());
+      } catch (IOException e) {
+        // writing to memory can't fail
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**Callers must hold the write lock of the star
+   * @throws IllegalStateException if the background thread failed to write the journal, so the mutation about to
+   *                               be made couldn't be logged
+   */
+  void checkWritable() throws IllegalStateException {
+    if (failure != null)
+      throw new IllegalStateException(AnsiColors.YELLOW + "Warning!" + AnsiColors.RESET
+          + "\nThe journal can't be written anymore: " + failure.getMessage());
+  }
+
+  /**Writes the pending records to the current segment, forcing them to disk if fsync is enabled
+   * @throws IOException if the segment can't be written
+   */
+  public void flush() throws IOException {
+    ioLock.lock();
+    try {
+      byte[] records;
+      synchronized (this) {
+        if (pending.size() == 0)
+          return;
+
+        records = pending.toByteArray();
+        pending.reset();
+      }
+
+      ByteBuffer buffer = ByteBuffer.wrap(records);
+      while (buffer.hasRemaining())
+        segment.write(buffer);
+      if (fsync)
+        segment.force(false);
+    } finally {
+      ioLock.unlock();
+    }
+  }
+
+  /**Saves a new snapshot of the star system and deletes the journal segments it covers. Mutations are only blocked
+   * while the current segment is closed, the snapshot is written while they go on
+   * @throws IOException if the snapshot or the segments can't be written
+   */
+  public void compact() throws IOException {
+    StarSystemSnapshot snapshot;
+    long coveredSegment;
+
+    star.getLock().writeLock().lock();
+    ioLock.lock();
+    try {
+      flush();
+      coveredSegment = segmentNumber;
+      openSegment(segmentNumber + 1);
+      snapshot = star.snapshot();
+    } finally {
+      ioLock.unlock();
+      star.getLock().writeLock().unlock();
+    }
+
+    // save forces the snapshot and the directory is forced around the move, so the covered segments are only deleted
+    // once the new snapshot and the segment opened above survive a crash
+    Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+    StarSystemFile.save(snapshot, temporary);
+    forceDirectory(directory);
+    Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    forceDirectory(directory);
+
+    for (long segment : segmentNumbers(directory)) {
+      if (segment <= coveredSegment)
+        Files.deleteIfExists(segmentPath(directory, segment));
+    }
+  }
+
+  /**Detaches the journal from the star and writes the pending records
+   * @throws IOException if the pending records can't be written
+   */
+  @Override
+  public void close() throws IOException {
+    star.getLock().writeLock().lock();
+    try {
+      star.setJournal(null);
+    } finally {
+      star.getLock().writeLock().unlock();
+    }
+
+    // the flusher isn't interrupted, an interrupt would close the segment channel in the middle of a write
+    closed = true;
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    ioLock.lock();
+    try {
+      flush();
+      segment.close();
+    } finally {
+      ioLock.unlock();
+    }
+
+    if (failure != null)
+      throw failure;
+  }
+
+  private void flushPeriodically() {
+    while (!closed) {
+      try {
+        Thread.sleep(flushIntervalMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      try {
+        flush();
+        if (segmentSize() >= compactionSize)
+          compact();
+      } catch (IOException e) {
+        failure = e;
+        return;
+      }
+    }
+  }
+
+  /**Forces the entries of the directory to disk, where the file system allows opening a directory
+   * @param directory to force
+   */
+  private static void forceDirectory(Path directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // directories can't be opened on some platforms, such as Windows, where there is nothing more to do
+      return;
+    }
+
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  private long segmentSize() throws IOException {
+    ioLock.lock();
+    try {
+      return segment.size();
+    } finally {
+      ioLock.unlock();
+    }
+  }
+
+  /**Callers must hold the io lock
+   * @param number of the segment to open
+   */
+  private void openSegment(long number) throws IOException {
+    if (segment != null)
+      segment.close();
+
+    segment = FileChannel.open(segmentPath(directory, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+    segmentNumber = number;
+  }
+
+  /**Applies the records of a segment to the star. The records of the bodies already in the star (or already removed)
+   * are skipped, so a segment covered by the snapshot can be replayed safely. A record cut by a crash ends the replay
+   * @param star to apply the records to
+   * @param segment to replay
+   */
+  private static void replay(Star star, Path segment) throws IOException {
+    try (InputStream file = Files.newInputStream(segment);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+      while (true) {
+        int operation = input.read();
+        if (operation < 0)
+          return;
+
+        long numericID = input.readLong();
+        String ID = "CB_" + numericID;
+        if (operation == REMOVE) {
+          CelestialBody celestialBody = star.searchCelestialBody(ID);
+
+          if (celestialBody instanceof Planet) {
+            star.removePlanet((Planet) celestialBody);
+          } else if (celestialBody instanceof Satellite) {
+            Planet orbitingPlanet = star.getOrbitingPlanet((Satellite) celestialBody);
+            if (orbitingPlanet != null)
+              orbitingPlanet.removeSatellite((Satellite) celestialBody);
+          }
+          continue;
+        }
+
+        long parentID = input.readLong();
+        double mass = input.readDouble();
+        Position position = new Position(input.readDouble(), input.readDouble());
+        String name = input.readUTF();
+        if (star.searchCelestialBody(ID) != null)
+          continue;
+
+        if (operation == ADD_PLANET) {
+          star.addPlanet(new Planet(numericID, name, mass, position));
+        } else if (operation == ADD_SATELLITE) {
+          CelestialBody orbitingPlanet = star.searchCelestialBody("CB_" + parentID);
+          if (orbitingPlanet instanceof Planet)
+            ((Planet) orbitingPlanet).addSatellite(
+                new Satellite(numericID, name, mass, position, (Planet) orbitingPlanet));
+        } else {
+          throw new IOException("Corrupted journal segment " + segment);
+        }
+      }
+    } catch (EOFException e) {
+      // the last record was only partially written
+    }
+  }
+
+  private static Path segmentPath(Path directory, long number) {
+    return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * @return the numbers of the journal segments in the directory, in ascending order
+   */
+  private static ArrayList<Long> segmentNumbers(Path directory) throws IOException {
+    ArrayList<Long> numbers = new ArrayList<>();
+    if (!Files.isDirectory(directory))
+      return numbers;
+
+    try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory,
+        SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : segments) {
+        String fileName = segment.getFileName().toString();
+        numbers.add(Long.parseLong(
+            fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length())));
+      }
+    }
+    numbers.sort(null);
+
+    return numbers;
+  }
+}
@@ -0,0 +1,193 @@
+package plus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server answering read only queries on a star system with JSON objects, so that other local processes
+ * can query it without the console. The endpoints, all answering GET requests, are:
+ * <ul>
+ * <li>/search?query=ID_OR_NAME</li>
+ * <li>/route?start=ID_OR_NAME&amp;finish=ID_OR_NAME</li>
+ * <li>/center-of-mass</li>
+ * <li>/collisions</li>
+ * </ul>
+ * Requests are served concurrently by a pool of threads: searches and routes share the read lock of the star and
+ * collisions are detected on a snapshot, so readers don't block each other. The fields of the answers are the same of
+ * the batch mode results.
+ * <p>
+ * Without TCP_NODELAY small answers wait for the delayed acknowledgment of the headers, about 40 ms each: the JDK server
+ * reads it from the {@code sun.net.httpserver.nodelay} system property, which is JVM wide and so isn't set here. Run
+ * with {@code -Dsun.net.httpserver.nodelay=true}, as {@code App --serve} does when the property is missing.
+ * @see BatchCommandRunner
+ */
+public class StarSystemServer implements Closeable {
+  private final Star star;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  // collisions of the last version of the system, so that they are detected once per version and not per request
+  private volatile CachedAnswer collisions;
+
+  /**Starts the server on the loopback address
+   * @param star whose system has to be queried
+   * @param port to listen on, 0 for any free port
+   * @param threads serving the requests
+   * @throws IOException if the server can't listen on the port
+   */
+  public StarSystemServer(Star star, int port, int threads) throws IOException {
+    this.star = star;
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.createContext("/search", exchange -> handle(exchange, this::search));
+    server.createContext("/route", exchange -> handle(exchange, this::route));
+    server.createContext("/center-of-mass", exchange -> handle(exchange, this::centerOfMass));
+    server.createContext("/collisions", exchange -> handle(exchange, this::collisions));
+    server.start();
+  }
+
+  /**
+   * @return the port the server listens on
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**Stops accepting requests, waiting at most one second for the ones being served
+   */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdown();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void search(HashMap<String, String> parameters, StringBuilder result) {
+    CelestialBody celestialBody = star.searchCelestialBody(requireParameter(parameters, "query"));
+    if (celestialBody == null)
+      throw new NotFoundException("Celestial body not found");
+
+    BatchCommandRunner.appendCelestialBody(result, star, celestialBody);
+  }
+
+  private void route(HashMap<String, String> parameters, StringBuilder result) {
+    CelestialBody start = star.searchCelestialBody(requireParameter(parameters, "start"));
+    CelestialBody finish = star.searchCelestialBody(requireParameter(parameters, "finish"));
+    if (start == null || finish == null)
+      throw new NotFoundException("One or both the celestial bodies weren't found");
+
+    BatchCommandRunner.appendRoute(result, star, start, finish);
+  }
+
+  private void centerOfMass(HashMap<String, String> parameters, StringBuilder result) {
+    Position centerOfMass = star.centerOfMass();
+
+    BatchCommandRunner.appendField(result, "x", centerOfMass.getX());
+    BatchCommandRunner.appendField(result, "y", centerOfMass.getY());
+  }
+
+  private void collisions(HashMap<String, String> parameters, StringBuilder result) {
+    StarSystemSnapshot snapshot = star.snapshot();
+    CachedAnswer cached = collisions;
+
+    if (cached == null || cached.version != snapshot.getVersion()) {
+      StringBuilder answer = new StringBuilder();
+      BatchCommandRunner.appendCollisions(answer, snapshot.detectCollisions());
+      cached = new CachedAnswer(snapshot.getVersion(), answer.toString());
+      collisions = cached;
+    }
+
+    result.append(cached.fields);
+  }
+
+  private static class CachedAnswer {
+    private final long version;
+    private final String fields;
+
+    CachedAnswer(long version, String fields) {
+      this.version = version;
+      this.fields = fields;
+    }
+  }
+
+  private interface Query {
+    void answer(HashMap<String, String> parameters, StringBuilder result);
+  }
+
+  private static class NotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    NotFoundException(String message) {
+      super(message);
+    }
+  }
+
+  private static void handle(HttpExchange exchange, Query query) throws IOException {
+    StringBuilder result = new StringBuilder("{\"status\":\"ok\"");
+    int statusCode = 200;
+
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        statusCode = 405;
+        throw new IllegalArgumentException("Only GET requests are supported");
+      }
+
+      query.answer(parseQuery(exchange.getRequestURI().getRawQuery()), result);
+    } catch (RuntimeException e) {
+      if (statusCode == 200)
+        statusCode = e instanceof NotFoundException ? 404 : e instanceof IllegalArgumentException ? 400 : 500;
+
+      result.setLength(0);
+      result.append("{\"status\":\"error\",\"message\":");
+      StarSystemCatalog.appendJsonString(result, BatchCommandRunner.withoutColors(String.valueOf(e.getMessage())));
+    }
+    result.append('}');
+
+    byte[] body = result.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(statusCode, body.length);
+    try (OutputStream output = exchange.getResponseBody()) {
+      output.write(body);
+    }
+  }
+
+  private static String requireParameter(HashMap<String, String> parameters, String name) {
+    String value = parameters.get(name);
+    if (value == null || value.isEmpty())
+      throw new IllegalArgumentException("Missing parameter " + name);
+
+    return value;
+  }
+
+  private static HashMap<String, String> parseQuery(String query) {
+    HashMap<String, String> parameters = new HashMap<>();
+    if (query == null)
+      return parameters;
+
+    for (String parameter : query.split("&")) {
+      int separator = parameter.indexOf('=');
+      if (separator > 0)
+        parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+            URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+    }
+
+    return parameters;
+  }
+}
@@ -0,0 +1,87 @@
+package plus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable view of a star system at a given version.
+ * Snapshots are taken with Star.snapshot and never change afterwards, so long scans can run on them without any lock
+ * while the live system keeps changing. The satellite lists of the planets that didn't change are shared between
+ * consecutive snapshots
+ * @see Star#snapshot()
+ */
+public class StarSystemSnapshot {
+  /**
+   * A planet with its satellites at the version of the snapshot
+   */
+  public static class PlanetSnapshot {
+    private final Planet planet;
+    private final List<Satellite> satellites;
+
+    PlanetSnapshot(Planet planet, List<Satellite> satellites) {
+      this.planet = planet;
+      this.satellites = satellites;
+    }
+
+    public Planet getPlanet() {
+      return planet;
+    }
+
+    /**
+     * @return the unmodifiable list of the satellites of the planet
+     */
+    public List<Satellite> getSatellites() {
+      return satellites;
+    }
+  }
+
+  private final long version;
+  private final Star star;
+  private final List<PlanetSnapshot> planets;
+  private final double totalSystemMass;
+  private final double weightedPositionSumX;
+  private final double weightedPositionSumY;
+
+  StarSystemSnapshot(long version, Star star, List<PlanetSnapshot> planets, double totalSystemMass,
+      double weightedPositionSumX, double weightedPositionSumY) {
+    this.version = version;
+    this.star = star;
+    this.planets = planets;
+    this.totalSystemMass = totalSystemMass;
+    this.weightedPositionSumX = weightedPositionSumX;
+    this.weightedPositionSumY = weightedPositionSumY;
+  }
+
+  /**
+   * @return the number of mutations the star system went through before this snapshot
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  public Star getStar() {
+    return star;
+  }
+
+  /**
+   * @return the unmodifiable list of the planets, with their satellites
+   */
+  public List<PlanetSnapshot> getPlanets() {
+    return planets;
+  }
+
+  /**
+   * @return the center of mass of the star system at the version of this snapshot
+   */
+  public Position centerOfMass() {
+    return new Position(weightedPositionSumX / totalSystemMass, weightedPositionSumY / totalSystemMass);
+  }
+
+  /**
+   * @return the pairs of celestial bodies that may collide at the version of this snapshot
+   * @see CollisionDetector
+   */
+  public ArrayList<Collision> detectCollisions() {
+    return new CollisionDetector(this).detect();
+  }
+}